@@ -2,18 +2,100 @@
 // LRU CACHE SYSTEM - 
 // =====================================================
 
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
 
 // Main Class - Must be first and public
 public class LRUCacheSystem {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("benchmark")) {
+            CacheBenchmark.run(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("simulate")) {
+            CacheSimulator.run(args);
+            return;
+        }
+        
         System.out.println("=== LRU CACHE SYSTEM DEMO ===");
         System.out.println("=============================\n");
         
         // Demo 1: Basic operations
         System.out.println("1. Basic LRU Cache Operations:");
-        LRUCache<String, String> cache = new LRUCache<>(3);
+        LRUCache<String, String> cache = new LRUCache<>(3, new VerboseCacheListener<>());
         
         cache.put("key1", "value1");
         cache.put("key2", "value2");
@@ -33,7 +115,7 @@ public class LRUCacheSystem {
         
         // Demo 2: Integer cache
         System.out.println("\n=== INTEGER CACHE DEMO ===");
-        LRUCache<Integer, Integer> intCache = new LRUCache<>(2);
+        LRUCache<Integer, Integer> intCache = new LRUCache<>(2, new VerboseCacheListener<>());
         
         intCache.put(1, 10);
         intCache.put(2, 20);
@@ -45,7 +127,7 @@ public class LRUCacheSystem {
         
         // Demo 3: Cache operations
         System.out.println("\n=== CACHE OPERATIONS DEMO ===");
-        LRUCache<String, String> operationsCache = new LRUCache<>(4);
+        LRUCache<String, String> operationsCache = new LRUCache<>(4, new VerboseCacheListener<>());
         
         System.out.println("\n7. Testing cache operations:");
         operationsCache.put("A", "Apple");
@@ -62,14 +144,24 @@ public class LRUCacheSystem {
         System.out.println("\n8. Removing a key:");
         operationsCache.remove("B");
         
-        System.out.println("\n9. Clearing cache:");
+        System.out.println("\n9. Bulk operations (one pass, one eviction round):");
+        Map<String, String> batch = new LinkedHashMap<>();
+        batch.put("D", "Date");
+        batch.put("E", "Elderberry");
+        batch.put("F", "Fig");
+        operationsCache.putAll(batch);
+        System.out.println("getAll [C, D, Z]: " + operationsCache.getAll(Arrays.asList("C", "D", "Z")));
+        System.out.println("Invalidated: " + operationsCache.invalidateAll(Arrays.asList("D", "E", "Z")));
+        
+        System.out.println("\n10. Clearing cache:");
         operationsCache.clear();
         
-        // Demo 4: Performance test with String cache
+        // Demo 4: Performance test with String cache (quiet, no listener on the hot path)
         System.out.println("\n=== PERFORMANCE TEST ===");
         LRUCache<String, String> perfCache = new LRUCache<>(1000);
+        perfCache.recordStats();
         
-        System.out.println("\n10. Performance test with 1000 operations:");
+        System.out.println("\n11. Performance test with 1000 operations:");
         long startTime = System.nanoTime();
         
         // Add 500 items
@@ -89,6 +181,416 @@ public class LRUCacheSystem {
         System.out.println("Cache size: " + perfCache.size());
         perfCache.displayStatistics();
         
+        // Demo 5: Expiring entries
+        System.out.println("\n=== EXPIRY DEMO ===");
+        ManualTicker clock = new ManualTicker();
+        LRUCache<String, String> sessionCache = new LRUCache<>(10, new VerboseCacheListener<>());
+        sessionCache.setTicker(clock);
+        sessionCache.setExpireAfterWrite(30, TimeUnit.MINUTES);
+        sessionCache.setExpireAfterAccess(10, TimeUnit.MINUTES);
+        
+        System.out.println("\n12. Sessions with 30 min TTL, 10 min idle timeout:");
+        sessionCache.put("session:alice", "token-a");
+        sessionCache.put("session:bob", "token-b");
+        sessionCache.put("config:flags", "v1", 2, TimeUnit.MINUTES);
+        
+        System.out.println("\n13. After 5 minutes (config expired, sessions alive):");
+        clock.advance(5, TimeUnit.MINUTES);
+        sessionCache.get("config:flags");
+        sessionCache.get("session:alice");
+        
+        System.out.println("\n14. After 12 minutes (bob idle too long):");
+        clock.advance(7, TimeUnit.MINUTES);
+        sessionCache.cleanUp();
+        sessionCache.displayCache();
+        
+        // Demo 6: Refresh-ahead
+        System.out.println("\n=== REFRESH-AHEAD DEMO ===");
+        ManualTicker rateClock = new ManualTicker();
+        ExecutorService refreshPool = Executors.newSingleThreadExecutor();
+        AtomicInteger rateVersion = new AtomicInteger(1);
+        LRUCache<String, String> rateCache = new LRUCache<>(10, new VerboseCacheListener<>());
+        rateCache.setTicker(rateClock);
+        rateCache.setRefreshAfterWrite(1, TimeUnit.MINUTES,
+                currency -> currency + "@v" + rateVersion.incrementAndGet(), refreshPool);
+        
+        System.out.println("\n15. Reading a rate older than the 1 minute refresh interval:");
+        rateCache.put("USD", "USD@v1");
+        rateClock.advance(2, TimeUnit.MINUTES);
+        rateCache.get("USD"); // returns the stale value and starts a reload
+        refreshPool.shutdown();
+        try {
+            refreshPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rateCache.cleanUp(); // applies the finished reload
+        rateCache.get("USD");
+        
+        // Demo 7: Scan resistance of W-TinyLFU vs plain LRU
+        System.out.println("\n=== EVICTION POLICY DEMO ===");
+        System.out.println("\n16. Hot set of 50 keys interleaved with a one-hit scan of 5000 keys:");
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            LRUCache<Integer, Integer> policyCache = new LRUCache<>(100, policy);
+            int hits = 0;
+            int requests = 0;
+            for (int round = 0; round < 50; round++) {
+                for (int hot = 0; hot < 50; hot++) {
+                    requests++;
+                    if (policyCache.get(hot) != null) {
+                        hits++;
+                    } else {
+                        policyCache.put(hot, hot);
+                    }
+                    // 2 scan keys per hot access, never requested again
+                    int scanKey = 1000 + round * 100 + hot * 2;
+                    policyCache.put(scanKey, scanKey);
+                    policyCache.put(scanKey + 1, scanKey + 1);
+                }
+            }
+            System.out.println(policy + " hot-set hit rate: "
+                    + String.format("%.1f", 100.0 * hits / requests) + "%");
+        }
+        
+        // Demo 8: Weight-bounded cache
+        System.out.println("\n=== WEIGHTED CACHE DEMO ===");
+        LRUCache<String, byte[]> blobCache = new LRUCache<>(100);
+        blobCache.setMaximumWeight(10_000, (key, blob) -> blob.length);
+        
+        System.out.println("\n17. Caching blobs of different sizes under a 10000-byte budget:");
+        blobCache.put("thumbnail", new byte[200]);
+        blobCache.put("avatar", new byte[1_500]);
+        blobCache.put("report", new byte[6_000]);
+        blobCache.put("video-chunk", new byte[4_000]); // evicts LRU entries until it fits
+        System.out.println("Contains 'thumbnail': " + blobCache.containsKey("thumbnail"));
+        System.out.println("Contains 'report': " + blobCache.containsKey("report"));
+        blobCache.put("iso-image", new byte[50_000]); // heavier than the whole cache, not admitted
+        System.out.println("Contains 'iso-image': " + blobCache.containsKey("iso-image"));
+        blobCache.displayStatistics();
+        
+        // Demo 9: Removal listener and write-through writer
+        System.out.println("\n=== REMOVAL LISTENER DEMO ===");
+        ExecutorService removalExecutor = Executors.newSingleThreadExecutor();
+        Map<String, String> database = new LinkedHashMap<>();
+        LRUCache<String, String> writeThroughCache = new LRUCache<>(2);
+        writeThroughCache.setRemovalListener((key, value, cause) ->
+                System.out.println("Removed " + key + "=" + value + " (" + cause + ")"), removalExecutor);
+        writeThroughCache.setCacheWriter(new CacheWriter<String, String>() {
+            @Override
+            public void write(String key, String value) {
+                database.put(key, value);
+            }
+            
+            @Override
+            public void delete(String key, String value, RemovalCause cause) {
+                if (cause == RemovalCause.EXPLICIT) {
+                    database.remove(key);
+                }
+            }
+        });
+        
+        System.out.println("\n18. Evictions, replacements and removals delivered in batches off the write path:");
+        writeThroughCache.put("x", "1");
+        writeThroughCache.put("y", "2");
+        writeThroughCache.put("z", "3"); // evicts x
+        writeThroughCache.put("y", "20"); // replaces 2
+        writeThroughCache.remove("z");
+        writeThroughCache.cleanUp(); // wait for pending notifications
+        removalExecutor.shutdown();
+        System.out.println("Backing store after write-through: " + database);
+        
+        // Demo 10: Write-behind to a slow backing store
+        System.out.println("\n=== WRITE-BEHIND DEMO ===");
+        InMemoryBackingStore<String, Integer> inventoryStore = new InMemoryBackingStore<>(5);
+        try (WriteBehindWriter<String, Integer> writeBehind =
+                     new WriteBehindWriter<>(inventoryStore, 50, 100, TimeUnit.MILLISECONDS)) {
+            LRUCache<String, Integer> inventoryCache = new LRUCache<>(10);
+            inventoryCache.setCacheWriter(writeBehind);
+            
+            System.out.println("\n19. 1000 stock updates over 8 items, coalesced before reaching the store:");
+            for (int i = 0; i < 1000; i++) {
+                inventoryCache.put("item:" + (i % 8), i);
+            }
+            System.out.println("Dirty keys waiting: " + writeBehind.dirtyCount());
+            writeBehind.flush();
+            System.out.println("Store batches: " + inventoryStore.getBatchCount()
+                    + ", store writes: " + inventoryStore.getWriteCount());
+            System.out.println("item:0 in store: " + inventoryStore.get("item:0"));
+            writeBehind.displayStatistics();
+        }
+        
+        // Demo 11: Elastic capacity under memory pressure
+        System.out.println("\n=== ELASTIC CAPACITY DEMO ===");
+        LRUCache<Integer, String> elasticCache = new LRUCache<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            elasticCache.put(i, "value" + i);
+        }
+        
+        System.out.println("\n20. Shrinking from 1000 to 800 entries in bounded eviction batches:");
+        elasticCache.setCapacity(800);
+        while (elasticCache.size() > 800) {
+            elasticCache.cleanUp();
+            System.out.println("Size after maintenance step: " + elasticCache.size());
+        }
+        
+        System.out.println("\n21. Controller reacting to heap occupancy readings (85% high, 60% low watermark):");
+        MemoryPressureController pressureController =
+                new MemoryPressureController(elasticCache, 100, 2000, 0.60, 0.85);
+        pressureController.onHeapUsage(90, 100);
+        System.out.println("At 90% heap: capacity " + elasticCache.getCapacity());
+        pressureController.onHeapUsage(40, 100);
+        System.out.println("At 40% heap: capacity " + elasticCache.getCapacity());
+        
+        // Demo 12: Primitive long -> long cache, no boxing
+        System.out.println("\n=== PRIMITIVE CACHE DEMO ===");
+        LongLRUCache offsetCache = new LongLRUCache(3);
+        
+        System.out.println("\n22. Mapping long ids to long offsets:");
+        offsetCache.put(1001L, 4096L);
+        offsetCache.put(1002L, 8192L);
+        offsetCache.put(1003L, 12288L);
+        offsetCache.get(1001L, -1L);
+        offsetCache.put(1004L, 16384L); // evicts 1002
+        System.out.println("Offset for 1002: " + offsetCache.get(1002L, -1L));
+        offsetCache.displayCache();
+        
+        // Demo 13: Off-heap cache
+        System.out.println("\n=== OFF-HEAP CACHE DEMO ===");
+        System.out.println("\n23. Serialized strings stored in direct memory:");
+        try (OffHeapLRUCache<String, String> offHeapCache =
+                     new OffHeapLRUCache<>(2, 256, Serializer.utf8(), Serializer.utf8())) {
+            offHeapCache.put("user:1", "{\"name\":\"Alice\"}");
+            offHeapCache.put("user:2", "{\"name\":\"Bob\"}");
+            System.out.println("user:1 -> " + offHeapCache.get("user:1"));
+            offHeapCache.put("user:3", "{\"name\":\"Carol\"}"); // evicts user:2
+            System.out.println("Contains user:2: " + offHeapCache.containsKey("user:2"));
+            offHeapCache.displayStatistics();
+        }
+        
+        // Demo 14: Tiered cache with a disk-backed second level
+        System.out.println("\n=== TIERED CACHE DEMO ===");
+        System.out.println("\n24. L1 of 3 entries spilling evictions to append-only segment files:");
+        try {
+            Path spillDirectory = Files.createTempDirectory("tiered-cache");
+            DiskStore<String, String> diskStore =
+                    new DiskStore<>(spillDirectory, 512, 4096, Serializer.utf8(), Serializer.utf8());
+            try (TieredLRUCache<String, String> tieredCache =
+                         new TieredLRUCache<>(new LRUCache<>(3), diskStore, 64)) {
+                for (int i = 0; i < 10; i++) {
+                    tieredCache.put("page:" + i, "content of page " + i);
+                }
+                tieredCache.flush();
+                System.out.println("L1 entries: " + tieredCache.l1Size() + ", L2 entries: " + tieredCache.l2Size());
+                System.out.println("page:0 -> " + tieredCache.get("page:0") + " (promoted from L2)");
+                for (int round = 0; round < 5; round++) {
+                    for (int i = 0; i < 10; i++) {
+                        tieredCache.get("page:" + i);
+                    }
+                    tieredCache.flush();
+                }
+                tieredCache.displayStatistics();
+            }
+            Files.deleteIfExists(spillDirectory);
+        } catch (IOException e) {
+            System.out.println("Tiered cache failed: " + e.getMessage());
+        }
+        
+        // Demo 15: Concurrent cache shared across threads
+        System.out.println("\n=== CONCURRENT CACHE DEMO ===");
+        ConcurrentLRUCache<Integer, String> sharedCache = new ConcurrentLRUCache<>(1000, 16, true);
+        
+        System.out.println("\n25. 8 threads sharing one cache (buffered, lock-free reads):");
+        ExecutorService workers = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            final int threadId = t;
+            workers.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    int key = (i * 31 + threadId) % 2000;
+                    if (sharedCache.get(key) == null) {
+                        sharedCache.put(key, "value" + key);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        sharedCache.cleanUp();
+        System.out.println("Contains key 0: " + sharedCache.containsKey(0));
+        sharedCache.displayStatistics();
+        
+        // Demo 16: Loading cache with single-flight loads
+        System.out.println("\n=== LOADING CACHE DEMO ===");
+        LoadingLRUCache<String, String> loadingCache = new LoadingLRUCache<>(100);
+        loadingCache.getCache().recordStats();
+        AtomicInteger backendLoads = new AtomicInteger();
+        Function<String, String> slowLoader = key -> {
+            backendLoads.incrementAndGet();
+            try {
+                Thread.sleep(100); // Simulate a slow backend call
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "loaded-" + key;
+        };
+        
+        System.out.println("\n26. 50 concurrent requests for the same cold key:");
+        ExecutorService requestThreads = Executors.newFixedThreadPool(50);
+        for (int i = 0; i < 50; i++) {
+            requestThreads.submit(() -> loadingCache.get("product:42", slowLoader));
+        }
+        requestThreads.shutdown();
+        try {
+            requestThreads.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Backend loads: " + backendLoads.get());
+        
+        System.out.println("\n27. Bulk load of misses in one call:");
+        Map<String, String> products = loadingCache.getAll(Arrays.asList("product:42", "product:7", "product:8"),
+                missing -> {
+                    System.out.println("Bulk loading: " + missing);
+                    Map<String, String> loaded = new HashMap<>();
+                    for (String key : missing) {
+                        loaded.put(key, "bulk-" + key);
+                    }
+                    return loaded;
+                });
+        System.out.println("Result: " + products);
+        
+        System.out.println("\n28. Statistics snapshot:");
+        System.out.println(loadingCache.getCache().stats());
+                
+        // Demo 17: Near caches kept coherent by invalidation messages
+        System.out.println("\n=== NEAR CACHE DEMO ===");
+        InMemoryBackingStore<String, String> catalog = new InMemoryBackingStore<>();
+        catalog.writeAll(Collections.singletonMap("sku:1", "price=10"));
+        InvalidationTransport<String> bus = new InProcessInvalidationTransport<>(Runnable::run);
+        try (NearCache<String, String> nodeA = new NearCache<>(100, bus, 16, 1, TimeUnit.SECONDS);
+             NearCache<String, String> nodeB = new NearCache<>(100, bus, 16, 1, TimeUnit.SECONDS)) {
+            System.out.println("\n29. Both instances read the same key:");
+            System.out.println("A: " + nodeA.get("sku:1", catalog::get) + ", B: " + nodeB.get("sku:1", catalog::get));
+            
+            System.out.println("\n30. A updates the key; B drops its copy once the batch is published:");
+            catalog.writeAll(Collections.singletonMap("sku:1", "price=12"));
+            nodeA.put("sku:1", "price=12");
+            System.out.println("B still cached before publish: " + nodeB.containsKey("sku:1"));
+            nodeA.flushInvalidations();
+            System.out.println("B cached after publish: " + nodeB.containsKey("sku:1")
+                    + ", B reloads: " + nodeB.get("sku:1", catalog::get));
+            
+            System.out.println("\n31. B's slow read of the old value finishing after A's update:");
+            long stamp = nodeB.stamp();
+            String staleRead = catalog.get("sku:1");
+            catalog.writeAll(Collections.singletonMap("sku:1", "price=15"));
+            nodeA.put("sku:1", "price=15");
+            nodeA.flushInvalidations();
+            System.out.println("Cache stale read: " + nodeB.putIfCurrent("sku:1", staleRead, stamp));
+            nodeB.displayStatistics();
+        }
+
+        // Demo 18: Snapshot and warm start
+        System.out.println("\n=== SNAPSHOT DEMO ===");
+        System.out.println("\n32. Saving a cache and restoring it into a fresh instance:");
+        try {
+            LRUCache<String, String> warmCache = new LRUCache<>(4);
+            warmCache.put("a", "Apple");
+            warmCache.put("b", "Banana");
+            warmCache.put("c", "Cherry");
+            warmCache.get("a");
+            warmCache.displayCache();
+            
+            Path snapshot = Files.createTempFile("lru-cache", ".snapshot");
+            int saved = warmCache.saveSnapshot(snapshot, Serializer.utf8(), Serializer.utf8());
+            LRUCache<String, String> restoredCache = new LRUCache<>(4);
+            int restored = restoredCache.loadSnapshot(snapshot, Serializer.utf8(), Serializer.utf8());
+            System.out.println("Saved " + saved + " entries, restored " + restored);
+            restoredCache.displayCache();
+            Files.deleteIfExists(snapshot);
+        } catch (IOException e) {
+            System.out.println("Snapshot failed: " + e.getMessage());
+        }
+        
+        // Demo 19: Self-tuning ARC and LIRS policies
+        System.out.println("\n=== ADAPTIVE POLICY DEMO ===");
+        ARCCache<Integer, String> arcCache = new ARCCache<>(100);
+        LIRSCache<Integer, String> lirsCache = new LIRSCache<>(100);
+        LRUCache<Integer, String> lruBaseline = new LRUCache<>(100);
+        
+        System.out.println("\n33. 40 hot keys read in pairs, alternating with a 150-key loop, over 100-entry caches:");
+        int lruHits = 0;
+        int arcHits = 0;
+        int lirsHits = 0;
+        int hotAccesses = 0;
+        int loopAccesses = 0;
+        for (int i = 0; i < 30_000; i++) {
+            // Plain LRU keeps neither the hot keys nor the loop, so it only hits the second read of a pair
+            int key = (i % 2 == 0) ? 1_000 + (hotAccesses++ / 2) % 40 : loopAccesses++ % 150;
+            if (lruBaseline.get(key) != null) {
+                lruHits++;
+            } else {
+                lruBaseline.put(key, "value" + key);
+            }
+            if (arcCache.get(key) != null) {
+                arcHits++;
+            } else {
+                arcCache.put(key, "value" + key);
+            }
+            if (lirsCache.get(key) != null) {
+                lirsHits++;
+            } else {
+                lirsCache.put(key, "value" + key);
+            }
+        }
+        System.out.println("LRU hit rate: " + String.format("%.2f", lruHits / 300.0) + "%");
+        System.out.println("ARC hit rate: " + String.format("%.2f", arcHits / 300.0) + "%");
+        System.out.println("LIRS hit rate: " + String.format("%.2f", lirsHits / 300.0) + "%");
+        if (arcHits <= lruHits || lirsHits <= lruHits) {
+            throw new IllegalStateException("Adaptive policies did not beat LRU on the loop trace: LRU="
+                    + lruHits + " ARC=" + arcHits + " LIRS=" + lirsHits + " hits");
+        }
+        arcCache.displayStatistics();
+        lirsCache.displayStatistics();
+        
+        // Demo 20: Trace replay and miss-ratio curve
+        System.out.println("\n=== TRACE SIMULATION DEMO ===");
+        System.out.println("\n34. Replaying a 200,000-access Zipfian trace with a periodic scan:");
+        try {
+            Path trace = Files.createTempFile("cache-trace", ".txt");
+            try (BufferedWriter writer = Files.newBufferedWriter(trace)) {
+                ZipfianGenerator zipfian = new ZipfianGenerator(50_000, 0.9, new Random(42));
+                for (int i = 0; i < 200_000; i++) {
+                    // Every 10th access belongs to a sequential scan of one-hit keys
+                    long key = (i % 10 == 0) ? 1_000_000L + i : zipfian.next();
+                    writer.write(Long.toString(key));
+                    writer.newLine();
+                }
+            }
+            int[] capacities = { 500, 1000, 2500, 5000, 10000 };
+            CacheSimulator.printCurves(capacities, CacheSimulator.simulate(trace, false, capacities));
+            Files.deleteIfExists(trace);
+            
+            System.out.println("\nA 6,000-key loop interleaved with hot keys (LRU thrashes below 6,000):");
+            Path loopTrace = Files.createTempFile("cache-loop-trace", ".txt");
+            try (BufferedWriter writer = Files.newBufferedWriter(loopTrace)) {
+                Random random = new Random(7);
+                for (int i = 0; i < 200_000; i++) {
+                    long key = (i % 2 == 0) ? (i / 2) % 6_000 : 100_000L + random.nextInt(200);
+                    writer.write(Long.toString(key));
+                    writer.newLine();
+                }
+            }
+            CacheSimulator.printCurves(capacities, CacheSimulator.simulate(loopTrace, false, capacities));
+            Files.deleteIfExists(loopTrace);
+        } catch (IOException e) {
+            System.out.println("Trace simulation failed: " + e.getMessage());
+        }
+
         System.out.println("\n=== LRU CACHE DEMO COMPLETED ===");
     }
 }
@@ -102,6 +604,22 @@ class LRUCache<K, V> {
         Node prev;
         Node next;
         
+        // Region of the W-TinyLFU policy this node lives in (PROBATION under plain LRU)
+        int queue;
+        int weight = 1;
+        
+        // Expiration bookkeeping (only used when expiry is configured)
+        long writeTime;
+        long writeTtl;
+        long expirationTime;
+        Node prevInTimer;
+        Node nextInTimer;
+        
+        // Set while an asynchronous refresh of this entry is in flight
+        boolean refreshing;
+        // Bumped on every write, so a refresh can tell whether the value changed under it
+        int writeCount;
+        
         Node(K key, V value) {
             this.key = key;
             this.value = value;
@@ -113,93 +631,342 @@ class LRUCache<K, V> {
         }
     }
     
-    private final int capacity;
+    private int capacity;
     private final Map<K, Node> cache;
     private final Node head;
     private final Node tail;
     private int size;
+    private CacheListener<K, V> listener;
+    
+    // Requested capacity; may be set from any thread and is applied by the owner, growing
+    // at once and shrinking at most SHRINK_BATCH evictions per operation
+    private static final int SHRINK_BATCH = 64;
+    private volatile int targetCapacity;
+    
+    // Weight bound; without a weigher every entry weighs 1 and the bound equals capacity
+    private Weigher<K, V> weigher;
+    private long maximumWeight;
+    private long totalWeight;
+    
+    // W-TinyLFU state: the head/tail list above doubles as the probation segment
+    private static final int PROBATION = 0;
+    private static final int WINDOW = 1;
+    private static final int PROTECTED = 2;
+    
+    private final EvictionPolicy policy;
+    private FrequencySketch sketch;
+    private Node windowHead;
+    private Node windowTail;
+    private Node protectedHead;
+    private Node protectedTail;
+    private long windowWeight;
+    private long windowMaximum;
+    private long protectedWeight;
+    private long protectedMaximum;
+    
+    // Expiration settings; the timer wheel is created lazily on first use
+    private Ticker ticker = Ticker.systemTicker();
+    private long expireAfterWriteNanos;
+    private long expireAfterAccessNanos;
+    private TimerWheel timerWheel;
+    
+    // Refresh-ahead settings; reloads run on the executor and are applied by the owner thread
+    private long refreshAfterWriteNanos;
+    private Function<? super K, ? extends V> reloader;
+    private Executor refreshExecutor;
+    private final Queue<RefreshResult> completedRefreshes = new ConcurrentLinkedQueue<>();
+    
+    // Snapshot file format
+    private static final int SNAPSHOT_MAGIC = 0x4C525553; // "LRUS"
+    private static final int SNAPSHOT_VERSION = 1;
+    
+    // Statistics, null until recordStats() is called
+    private StatsCounter statsCounter;
+    
+    // Removal notifications (asynchronous, batched) and synchronous write-through hooks
+    private RemovalDispatcher<K, V> removalDispatcher;
+    private CacheWriter<K, V> cacheWriter;
     
     // Constructor
     public LRUCache(int capacity) {
+        this(capacity, CacheListener.none());
+    }
+    
+    public LRUCache(int capacity, CacheListener<K, V> listener) {
+        this(capacity, EvictionPolicy.LRU, listener);
+    }
+    
+    public LRUCache(int capacity, EvictionPolicy policy) {
+        this(capacity, policy, CacheListener.none());
+    }
+    
+    public LRUCache(int capacity, EvictionPolicy policy, CacheListener<K, V> listener) {
         if (capacity <= 0) {
             throw new IllegalArgumentException("Capacity must be positive");
         }
         
         this.capacity = capacity;
+        this.targetCapacity = capacity;
         this.cache = new HashMap<>();
         this.size = 0;
+        this.listener = Objects.requireNonNull(listener, "listener");
+        this.policy = Objects.requireNonNull(policy, "policy");
+        this.maximumWeight = capacity;
         
         // Create dummy head and tail nodes for easier manipulation
         this.head = new Node(null, null);
         this.tail = new Node(null, null);
         head.next = tail;
         tail.prev = head;
+        
+        if (policy == EvictionPolicy.WINDOW_TINY_LFU) {
+            initTinyLfu();
+        }
     }
     
     // Get value by key
     public V get(K key) {
+        if (statsCounter == null) {
+            return getEntry(key);
+        }
+        long start = System.nanoTime();
+        V value = getEntry(key);
+        statsCounter.recordGetLatency(System.nanoTime() - start);
+        return value;
+    }
+    
+    private V getEntry(K key) {
+        return getEntry(key, performMaintenance());
+    }
+    
+    private V getEntry(K key, long now) {
         Node node = cache.get(key);
+        if (node != null && hasExpired(node, now)) {
+            expireNode(node);
+            node = null;
+        }
         if (node == null) {
-            System.out.println("Cache MISS for key: " + key);
+            if (sketch != null) {
+                sketch.increment(key);
+            }
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            listener.onMiss(this, key);
             return null;
         }
         
-        System.out.println("Cache HIT for key: " + key + " -> " + node.value);
         // Move accessed node to head (mark as most recently used)
-        moveToHead(node);
-        displayCache();
+        onAccess(node);
+        if (expireAfterAccessNanos > 0) {
+            updateExpiration(node, now);
+        }
+        if (refreshAfterWriteNanos > 0 && !node.refreshing && now - node.writeTime >= refreshAfterWriteNanos) {
+            scheduleRefresh(node);
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        listener.onHit(this, key, node.value);
         return node.value;
     }
     
     // Put key-value pair
     public void put(K key, V value) {
+        put(key, value, expireAfterWriteNanos);
+    }
+    
+    // Put key-value pair that expires after the given time-to-live
+    public void put(K key, V value, long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Time-to-live must be positive");
+        }
+        put(key, value, unit.toNanos(duration));
+    }
+    
+    private void put(K key, V value, long writeTtl) {
+        if (statsCounter == null) {
+            putEntry(key, value, writeTtl);
+            return;
+        }
+        long start = System.nanoTime();
+        putEntry(key, value, writeTtl);
+        statsCounter.recordPut();
+        statsCounter.recordPutLatency(System.nanoTime() - start);
+    }
+    
+    private void putEntry(K key, V value, long writeTtl) {
+        long now = performMaintenance();
+        if (writeTtl > 0 && timerWheel == null) {
+            now = enableExpiration();
+        }
+        putEntry(key, value, writeTtl, now, true);
+    }
+    
+    // Write through to the cache writer, then link the entry
+    private boolean putEntry(K key, V value, long writeTtl, long now, boolean evict) {
+        if (cacheWriter != null) {
+            cacheWriter.write(key, value);
+        }
+        return linkEntry(key, value, writeTtl, now, evict);
+    }
+    
+    // Link or update one entry, returning false if it was rejected as too heavy to ever fit.
+    // Bulk writes skip eviction here: they trim once at the end and report onPut themselves.
+    private boolean linkEntry(K key, V value, long writeTtl, long now, boolean evict) {
         Node existingNode = cache.get(key);
+        int weight = weigh(key, value);
+        
+        if (weight > maximumWeight) {
+            // Can never fit: drop any old mapping rather than flushing the whole cache
+            if (existingNode != null) {
+                removeNode(existingNode);
+                removeEntry(existingNode);
+                notifyRemoval(key, existingNode.value, RemovalCause.REPLACED);
+            }
+            if (statsCounter != null) {
+                statsCounter.recordEviction(RemovalCause.SIZE);
+            }
+            listener.onEvict(this, key, value);
+            notifyRemoval(key, value, RemovalCause.SIZE);
+            return false;
+        }
         
         if (existingNode != null) {
             // Update existing node
-            System.out.println("Updating existing key: " + key + " with value: " + value);
+            V oldValue = existingNode.value;
             existingNode.value = value;
-            moveToHead(existingNode);
+            adjustWeight(existingNode, weight);
+            onAccess(existingNode);
+            recordWrite(existingNode, writeTtl, now);
+            if (oldValue != value) {
+                notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+            }
+            if (evict) {
+                evictEntries();
+                listener.onPut(this, key, value, true);
+            }
         } else {
             // Add new node
-            System.out.println("Adding new key: " + key + " with value: " + value);
             Node newNode = new Node(key, value);
+            newNode.weight = weight;
+            cache.put(key, newNode);
+            size++;
+            totalWeight += weight;
             
-            if (size >= capacity) {
-                // Remove least recently used (tail node)
-                Node tailNode = removeTail();
-                cache.remove(tailNode.key);
-                size--;
-                System.out.println("Evicted LRU key: " + tailNode.key);
+            if (sketch == null) {
+                addToHead(newNode);
+            } else {
+                sketch.increment(key);
+                newNode.queue = WINDOW;
+                linkFirst(windowHead, newNode);
+                windowWeight += weight;
             }
+            recordWrite(newNode, writeTtl, now);
             
-            cache.put(key, newNode);
-            addToHead(newNode);
-            size++;
+            if (evict) {
+                evictEntries();
+                listener.onPut(this, key, value, false);
+            }
         }
-        
-        displayCache();
+        return true;
     }
     
     // Remove a key from cache
     public boolean remove(K key) {
+        performMaintenance();
         Node node = cache.get(key);
         if (node == null) {
-            System.out.println("Key not found for removal: " + key);
+            listener.onRemove(this, key, false);
             return false;
         }
+        if (cacheWriter != null) {
+            cacheWriter.delete(key, node.value, RemovalCause.EXPLICIT);
+        }
         
-        cache.remove(key);
         removeNode(node);
-        size--;
-        System.out.println("Removed key: " + key);
-        displayCache();
+        removeEntry(node);
+        listener.onRemove(this, key, true);
+        notifyRemoval(key, node.value, RemovalCause.EXPLICIT);
         return true;
     }
     
-    // Check if key exists
+    // Get values for many keys in one pass; absent keys are left out of the result
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        long now = performMaintenance();
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = getEntry(key, now);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+    
+    // Put many key-value pairs, evicting once after the whole batch is linked in.
+    // onPut for the batch is reported after that trim, so listeners never observe the
+    // cache over its bound; evictions caused by the batch are reported before its puts.
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long now = performMaintenance();
+        if (expireAfterWriteNanos > 0 && timerWheel == null) {
+            now = enableExpiration();
+        }
+        List<K> putKeys = new ArrayList<>(entries.size());
+        List<V> putValues = new ArrayList<>(entries.size());
+        boolean[] updated = new boolean[entries.size()];
+        int attempted = 0;
+        try {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                boolean existed = cache.containsKey(entry.getKey());
+                if (putEntry(entry.getKey(), entry.getValue(), expireAfterWriteNanos, now, false)) {
+                    updated[putKeys.size()] = existed;
+                    putKeys.add(entry.getKey());
+                    putValues.add(entry.getValue());
+                }
+                attempted++;
+            }
+        } finally {
+            if (statsCounter != null) {
+                statsCounter.recordPuts(attempted);
+            }
+            // A failing writer stops the batch, but what was linked is still trimmed
+            evictEntries();
+            for (int i = 0; i < putKeys.size(); i++) {
+                listener.onPut(this, putKeys.get(i), putValues.get(i), updated[i]);
+            }
+        }
+    }
+    
+    // Remove many keys, returning how many were present
+    public int invalidateAll(Collection<? extends K> keys) {
+        performMaintenance();
+        int removed = 0;
+        for (K key : keys) {
+            Node node = cache.get(key);
+            if (node == null) {
+                listener.onRemove(this, key, false);
+                continue;
+            }
+            if (cacheWriter != null) {
+                cacheWriter.delete(key, node.value, RemovalCause.EXPLICIT);
+            }
+            removeNode(node);
+            removeEntry(node);
+            listener.onRemove(this, key, true);
+            notifyRemoval(key, node.value, RemovalCause.EXPLICIT);
+            removed++;
+        }
+        return removed;
+    }
+    
+    // Check if key exists (expired entries are treated as absent)
     public boolean containsKey(K key) {
-        return cache.containsKey(key);
+        Node node = cache.get(key);
+        return node != null && (timerWheel == null || !hasExpired(node, ticker.read()));
     }
     
     // Get current size
@@ -207,9 +974,17 @@ class LRUCache<K, V> {
         return size;
     }
     
-    // Get capacity
+    // Get capacity (the requested one while a shrink is still in progress)
     public int getCapacity() {
-        return capacity;
+        return targetCapacity;
+    }
+    
+    // Resize the cache; safe to call from any thread, takes effect on the next operation
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        targetCapacity = capacity;
     }
     
     // Check if cache is empty
@@ -219,17 +994,234 @@ class LRUCache<K, V> {
     
     // Check if cache is full
     public boolean isFull() {
-        return size == capacity;
+        return size >= capacity || totalWeight >= maximumWeight;
     }
     
-    // Clear all entries
+    // Get maximum total weight (equals capacity unless a weigher is configured)
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+    
+    // Get sum of the weights of all entries
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+    
+    // Bound the cache by total entry weight instead of just entry count
+    public void setMaximumWeight(long maximumWeight, Weigher<K, V> weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        if (size > 0) {
+            throw new IllegalStateException("Maximum weight must be set while the cache is empty");
+        }
+        this.weigher = Objects.requireNonNull(weigher, "weigher");
+        this.maximumWeight = maximumWeight;
+        if (sketch != null) {
+            sizeRegions();
+        }
+    }
+    
+    // Clear all entries. This only drops local state: the CacheWriter is not told, so
+    // nothing is deleted from a backing store (use remove() or invalidateAll() for that).
     public void clear() {
+        List<Node> removed = Collections.emptyList();
+        if (removalDispatcher != null) {
+            removed = new ArrayList<>(cache.values());
+        }
         cache.clear();
         head.next = tail;
         tail.prev = head;
         size = 0;
-        System.out.println("Cache cleared");
-        displayCache();
+        totalWeight = 0;
+        if (sketch != null) {
+            windowHead.next = windowTail;
+            windowTail.prev = windowHead;
+            protectedHead.next = protectedTail;
+            protectedTail.prev = protectedHead;
+            windowWeight = 0;
+            protectedWeight = 0;
+        }
+        if (timerWheel != null) {
+            timerWheel.clear();
+        }
+        listener.onClear(this);
+        for (Node node : removed) {
+            notifyRemoval(node.key, node.value, RemovalCause.CLEARED);
+        }
+    }
+    
+    // Start recording hit/miss/eviction counts and get/put latencies
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+    
+    // Snapshot of the statistics (all zero unless recordStats() was called)
+    public CacheStats stats() {
+        return (statsCounter == null) ? CacheStats.empty() : statsCounter.snapshot();
+    }
+    
+    // Replace the operation listener (CacheListener.none() for quiet mode)
+    public void setListener(CacheListener<K, V> listener) {
+        this.listener = Objects.requireNonNull(listener, "listener");
+    }
+    
+    public CacheListener<K, V> getListener() {
+        return listener;
+    }
+    
+    // Deliver removed entries with their cause to a listener running on the executor
+    public void setRemovalListener(RemovalListener<K, V> removalListener, Executor executor) {
+        setRemovalListener(removalListener, executor, RemovalDispatcher.DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    public void setRemovalListener(RemovalListener<K, V> removalListener, Executor executor, int queueCapacity) {
+        if (removalDispatcher != null) {
+            removalDispatcher.flush();
+        }
+        this.removalDispatcher = new RemovalDispatcher<>(removalListener, executor, queueCapacity);
+    }
+    
+    // Write through to a backing resource synchronously on every put and removal
+    public void setCacheWriter(CacheWriter<K, V> cacheWriter) {
+        this.cacheWriter = Objects.requireNonNull(cacheWriter, "cacheWriter");
+    }
+    
+    // Expire entries a fixed time after they were created or last updated
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = toExpiryNanos(duration, unit);
+        enableExpiration();
+    }
+    
+    // Expire entries a fixed time after they were last read or written
+    public void setExpireAfterAccess(long duration, TimeUnit unit) {
+        this.expireAfterAccessNanos = toExpiryNanos(duration, unit);
+        enableExpiration();
+    }
+    
+    // Reload entries older than the given age in the background on their next read.
+    // The stale value is returned right away; any Executor works, including a
+    // virtual-thread-per-task executor on Java 21+.
+    public void setRefreshAfterWrite(long duration, TimeUnit unit,
+                                     Function<? super K, ? extends V> reloader, Executor executor) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Refresh interval must be positive");
+        }
+        this.reloader = Objects.requireNonNull(reloader, "reloader");
+        this.refreshExecutor = Objects.requireNonNull(executor, "executor");
+        this.refreshAfterWriteNanos = unit.toNanos(duration);
+    }
+    
+    // Replace the time source used for expiration and refresh
+    public void setTicker(Ticker ticker) {
+        if (timerWheel != null || refreshAfterWriteNanos > 0) {
+            throw new IllegalStateException("Ticker must be set before expiration is enabled");
+        }
+        this.ticker = Objects.requireNonNull(ticker, "ticker");
+    }
+    
+    // Remove all entries that have expired by now and apply finished refreshes
+    public void cleanUp() {
+        performMaintenance();
+        if (removalDispatcher != null) {
+            removalDispatcher.flush();
+        }
+    }
+    
+    // Get eviction policy
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+    
+    // Write all live entries, most recently used first, to a compact binary file:
+    // [magic][version][count] then [keyLength][key][valueLength][value] per entry.
+    // Expiration deadlines are not saved; restored entries start a fresh lifetime.
+    public int saveSnapshot(Path file, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws IOException {
+        long now = performMaintenance();
+        List<Node> nodes = new ArrayList<>(size);
+        if (sketch != null) {
+            collectNodes(windowHead, windowTail, now, nodes);
+            collectNodes(protectedHead, protectedTail, now, nodes);
+        }
+        collectNodes(head, tail, now, nodes);
+        
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(nodes.size());
+            for (Node node : nodes) {
+                byte[] keyBytes = keySerializer.serialize(node.key);
+                byte[] valueBytes = valueSerializer.serialize(node.value);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(valueBytes.length);
+                out.write(valueBytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A failed save (e.g. a serializer that throws) must not leave a partial file behind
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        // Replace the old snapshot only once the new one is complete
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return nodes.size();
+    }
+    
+    // Memory-map a snapshot and bulk-load it, keeping its recency order. Entries beyond
+    // capacity or maximum weight are the least recently used ones and are skipped. Restored
+    // entries came from the store, so they are not written back through the cache writer
+    // and do not fire onPut; evictions they cause are reported as usual. Returns entries loaded.
+    public int loadSnapshot(Path file, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws IOException {
+        List<K> keys = new ArrayList<>();
+        List<V> values = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedRegion region = new MappedRegion(channel);
+            if (region.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            int version = region.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            int count = region.readInt();
+            long snapshotWeight = 0;
+            for (int i = 0; i < count && keys.size() < capacity; i++) {
+                K key = keySerializer.deserialize(region.readBytes(region.readInt()));
+                V value = valueSerializer.deserialize(region.readBytes(region.readInt()));
+                int weight = weigh(key, value);
+                if (snapshotWeight + weight > maximumWeight) {
+                    continue;
+                }
+                snapshotWeight += weight;
+                keys.add(key);
+                values.add(value);
+            }
+        }
+        
+        long now = performMaintenance();
+        if (expireAfterWriteNanos > 0 && timerWheel == null) {
+            now = enableExpiration();
+        }
+        // Link from least to most recent so the file's order survives, then trim once
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            linkEntry(keys.get(i), values.get(i), expireAfterWriteNanos, now, false);
+        }
+        evictEntries();
+        return keys.size();
     }
     
     // Get all keys in LRU order (most recent first)
@@ -250,21 +1242,52 @@ class LRUCache<K, V> {
             return;
         }
         
+        if (sketch != null) {
+            // W-TinyLFU: show each region MRU -> LRU
+            System.out.print("Window: ");
+            printNodes(windowHead, windowTail);
+            System.out.print("| Protected: ");
+            printNodes(protectedHead, protectedTail);
+            System.out.print("| Probation: ");
+            printNodes(head, tail);
+            System.out.println(" | Size: " + size + "/" + capacity);
+            return;
+        }
+        
         System.out.print("Cache (MRU -> LRU): ");
-        Node current = head.next;
-        while (current != tail) {
+        printNodes(head, tail);
+        System.out.println(" | Size: " + size + "/" + capacity);
+    }
+    
+    private void collectNodes(Node from, Node to, long now, List<Node> nodes) {
+        Node current = from.next;
+        while (current != to) {
+            if (timerWheel == null || !hasExpired(current, now)) {
+                nodes.add(current);
+            }
+            current = current.next;
+        }
+    }
+    
+    private void printNodes(Node from, Node to) {
+        Node current = from.next;
+        while (current != to) {
             System.out.print(current + " ");
             current = current.next;
         }
-        System.out.println(" | Size: " + size + "/" + capacity);
     }
     
     // Add node to head (most recently used position)
     private void addToHead(Node node) {
-        node.prev = head;
-        node.next = head.next;
-        head.next.prev = node;
-        head.next = node;
+        linkFirst(head, node);
+    }
+    
+    // Add node right after the given sentinel
+    private void linkFirst(Node sentinel, Node node) {
+        node.prev = sentinel;
+        node.next = sentinel.next;
+        sentinel.next.prev = node;
+        sentinel.next = node;
     }
     
     // Remove a node from the linked list
@@ -279,28 +1302,5265 @@ class LRUCache<K, V> {
         addToHead(node);
     }
     
-    // Remove tail node (least recently used)
-    private Node removeTail() {
-        Node lastNode = tail.prev;
-        removeNode(lastNode);
-        return lastNode;
+    // Record a hit on the node according to the eviction policy
+    private void onAccess(Node node) {
+        if (sketch == null) {
+            moveToHead(node);
+            return;
+        }
+        
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            removeNode(node);
+            linkFirst(windowHead, node);
+        } else if (node.queue == PROTECTED) {
+            removeNode(node);
+            linkFirst(protectedHead, node);
+        } else {
+            // Second hit in probation promotes to protected, demoting its overflow
+            removeNode(node);
+            node.queue = PROTECTED;
+            linkFirst(protectedHead, node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum && protectedTail.prev != node) {
+                Node demoted = protectedTail.prev;
+                removeNode(demoted);
+                demoted.queue = PROBATION;
+                addToHead(demoted);
+                protectedWeight -= demoted.weight;
+            }
+        }
     }
     
-    // Get cache statistics
-    public void displayStatistics() {
-        System.out.println("\n=== Cache Statistics ===");
-        System.out.println("Capacity: " + capacity);
+    // Evict entries until the cache is back within capacity
+    private void evictEntries() {
+        if (sketch == null) {
+            while (isOverCapacity()) {
+                // Remove least recently used (tail node)
+                evictNode(tail.prev);
+            }
+            return;
+        }
+        
+        // Window overflow moves to the probation head as admission candidates
+        int candidates = 0;
+        while (windowWeight > windowMaximum && windowTail.prev != windowHead) {
+            Node node = windowTail.prev;
+            removeNode(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            addToHead(node);
+            candidates++;
+        }
+        
+        // Each candidate duels the probation victim once; the less frequent one is evicted.
+        // Candidates sit at the probation head, so the next one is toward the tail.
+        Node candidate = (candidates > 0) ? head.next : null;
+        while (isOverCapacity()) {
+            Node victim = tail.prev;
+            if (victim == head) {
+                victim = (protectedTail.prev != protectedHead) ? protectedTail.prev : windowTail.prev;
+            }
+            if (candidate == null || candidate == victim) {
+                // No candidates left, or probation holds nothing older than the last one
+                if (candidate == victim) {
+                    candidate = null;
+                }
+                evictNode(victim);
+                continue;
+            }
+            Node next = (--candidates > 0) ? candidate.next : null;
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                if (next == victim) {
+                    next = null;
+                }
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+            }
+            candidate = next;
+        }
+    }
+    
+    // Evict a linked node because of capacity
+    private void evictNode(Node node) {
+        removeNode(node);
+        removeEntry(node);
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.SIZE);
+        }
+        listener.onEvict(this, node.key, node.value);
+        notifyRemoval(node.key, node.value, RemovalCause.SIZE);
+    }
+    
+    // Hand a removed entry to the writer (evictions only) and the removal listener
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (cacheWriter != null && cause.wasEvicted()) {
+            try {
+                cacheWriter.delete(key, value, cause);
+            } catch (RuntimeException e) {
+                System.err.println("Cache writer failed to delete " + key + ": " + e);
+            }
+        }
+        if (removalDispatcher != null) {
+            removalDispatcher.publish(key, value, cause);
+        }
+    }
+    
+    private boolean isOverCapacity() {
+        return size > capacity || totalWeight > maximumWeight;
+    }
+    
+    private int weigh(K key, V value) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        return weight;
+    }
+    
+    // Apply a weight change to the totals of the node's region
+    private void adjustWeight(Node node, int weight) {
+        int delta = weight - node.weight;
+        node.weight = weight;
+        totalWeight += delta;
+        if (node.queue == WINDOW) {
+            windowWeight += delta;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight += delta;
+        }
+    }
+    
+    private void initTinyLfu() {
+        sizeRegions();
+        sketch = new FrequencySketch(capacity);
+        
+        windowHead = new Node(null, null);
+        windowTail = new Node(null, null);
+        windowHead.next = windowTail;
+        windowTail.prev = windowHead;
+        protectedHead = new Node(null, null);
+        protectedTail = new Node(null, null);
+        protectedHead.next = protectedTail;
+        protectedTail.prev = protectedHead;
+    }
+    
+    // Window gets 1% of the maximum, protected 80% of the rest
+    private void sizeRegions() {
+        windowMaximum = Math.max(1, maximumWeight / 100);
+        protectedMaximum = (long) ((maximumWeight - windowMaximum) * 0.8);
+    }
+    
+    // Drop an already unlinked node from the map and the timer wheel
+    private void removeEntry(Node node) {
+        cache.remove(node.key);
+        size--;
+        totalWeight -= node.weight;
+        if (node.queue == WINDOW) {
+            windowWeight -= node.weight;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight -= node.weight;
+        }
+        if (node.nextInTimer != null) {
+            timerWheel.deschedule(node);
+        }
+    }
+    
+    // Remove an expired node and notify the listener
+    private void expireNode(Node node) {
+        removeNode(node);
+        removeEntry(node);
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.EXPIRED);
+        }
+        listener.onExpire(this, node.key, node.value);
+        notifyRemoval(node.key, node.value, RemovalCause.EXPIRED);
+    }
+    
+    // Apply finished refreshes, advance the timer wheel and return the current time
+    // (0 when neither expiry nor refresh is configured)
+    private long performMaintenance() {
+        if (targetCapacity != capacity) {
+            resize(targetCapacity);
+        }
+        if (timerWheel == null && refreshAfterWriteNanos == 0) {
+            return 0L;
+        }
+        long now = ticker.read();
+        if (!completedRefreshes.isEmpty()) {
+            applyRefreshes(now);
+        }
+        if (timerWheel != null) {
+            timerWheel.advance(now);
+        }
+        return now;
+    }
+    
+    // Move the effective capacity towards the target; a shrink evicts one bounded batch
+    // per call so a large reduction never stalls a single operation
+    private void resize(int target) {
+        capacity = (target > capacity || size <= target) ? target : Math.max(target, size - SHRINK_BATCH);
+        if (weigher == null) {
+            maximumWeight = capacity;
+            if (sketch != null) {
+                sizeRegions();
+            }
+        }
+        evictEntries();
+    }
+    
+    private long enableExpiration() {
+        if (timerWheel == null) {
+            timerWheel = new TimerWheel(ticker.read());
+        }
+        return ticker.read();
+    }
+    
+    // A node is expired once the clock reaches its deadline; unscheduled nodes never expire
+    private boolean hasExpired(Node node, long now) {
+        return node.nextInTimer != null && now - node.expirationTime >= 0;
+    }
+    
+    private void recordWrite(Node node, long writeTtl, long now) {
+        node.writeCount++;
+        node.writeTime = now;
+        node.writeTtl = writeTtl;
+        if (timerWheel != null) {
+            updateExpiration(node, now);
+        }
+    }
+    
+    // Start one background reload; the result is queued for the cache's owner to apply
+    private void scheduleRefresh(Node node) {
+        node.refreshing = true;
+        K key = node.key;
+        int startedWriteCount = node.writeCount;
+        try {
+            refreshExecutor.execute(() -> {
+                V newValue = null;
+                boolean succeeded = false;
+                try {
+                    newValue = reloader.apply(key);
+                    succeeded = true;
+                } finally {
+                    completedRefreshes.add(new RefreshResult(node, startedWriteCount, newValue, succeeded));
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor rejected the task; try again on a later read
+            node.refreshing = false;
+        }
+    }
+    
+    // Install reloaded values unless the entry was removed or rewritten in the meantime
+    private void applyRefreshes(long now) {
+        RefreshResult result;
+        while ((result = completedRefreshes.poll()) != null) {
+            Node node = result.node;
+            node.refreshing = false;
+            if (!result.succeeded || result.value == null
+                    || cache.get(node.key) != node || node.writeCount != result.startedWriteCount) {
+                continue;
+            }
+            int weight = weigh(node.key, result.value);
+            if (weight > maximumWeight) {
+                continue;
+            }
+            V oldValue = node.value;
+            node.value = result.value;
+            adjustWeight(node, weight);
+            recordWrite(node, node.writeTtl, now);
+            listener.onRefresh(this, node.key, result.value);
+            if (oldValue != result.value) {
+                notifyRemoval(node.key, oldValue, RemovalCause.REPLACED);
+            }
+        }
+        evictEntries();
+    }
+    
+    // Outcome of a background reload
+    private final class RefreshResult {
+        final Node node;
+        final int startedWriteCount;
+        final V value;
+        final boolean succeeded;
+        
+        RefreshResult(Node node, int startedWriteCount, V value, boolean succeeded) {
+            this.node = node;
+            this.startedWriteCount = startedWriteCount;
+            this.value = value;
+            this.succeeded = succeeded;
+        }
+    }
+    
+    // Recompute the earliest deadline from write and access expiry and (re)schedule it
+    private void updateExpiration(Node node, long now) {
+        boolean expires = false;
+        long deadline = 0L;
+        if (node.writeTtl > 0) {
+            deadline = node.writeTime + node.writeTtl;
+            expires = true;
+        }
+        if (expireAfterAccessNanos > 0) {
+            long accessDeadline = now + expireAfterAccessNanos;
+            if (!expires || accessDeadline - deadline < 0) {
+                deadline = accessDeadline;
+            }
+            expires = true;
+        }
+        
+        if (expires) {
+            node.expirationTime = deadline;
+            timerWheel.schedule(node);
+        } else if (node.nextInTimer != null) {
+            timerWheel.deschedule(node);
+        }
+    }
+    
+    private static long toExpiryNanos(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must not be negative");
+        }
+        return unit.toNanos(duration);
+    }
+    
+    // Hierarchical timer wheel: each level is a ring of buckets covering a coarser span,
+    // so scheduling and descheduling are O(1) and advancing touches only the buckets
+    // whose time has passed. Entries in coarse buckets cascade down as time catches up.
+    private final class TimerWheel {
+        private final int[] buckets = { 64, 64, 32, 4, 1 };
+        private final long[] spans = {
+            1L << 30, // ~1.07 seconds
+            1L << 36, // ~1.14 minutes
+            1L << 42, // ~1.22 hours
+            1L << 47, // ~1.63 days
+            1L << 49, // ~6.5 days
+            1L << 49
+        };
+        private final int[] shifts = new int[spans.length];
+        private final Node[][] wheel;
+        private long nanos;
+        
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        TimerWheel(long now) {
+            this.nanos = now;
+            for (int i = 0; i < spans.length; i++) {
+                shifts[i] = Long.numberOfTrailingZeros(spans[i]);
+            }
+            wheel = (Node[][]) new LRUCache.Node[buckets.length][];
+            for (int i = 0; i < buckets.length; i++) {
+                wheel[i] = (Node[]) new LRUCache.Node[buckets[i]];
+                for (int j = 0; j < buckets[i]; j++) {
+                    Node sentinel = new Node(null, null);
+                    sentinel.prevInTimer = sentinel;
+                    sentinel.nextInTimer = sentinel;
+                    wheel[i][j] = sentinel;
+                }
+            }
+        }
+        
+        // Place (or move) a node into the bucket matching its expiration time
+        void schedule(Node node) {
+            if (node.nextInTimer != null) {
+                unlinkTimer(node);
+            }
+            Node sentinel = findBucket(node.expirationTime);
+            node.nextInTimer = sentinel;
+            node.prevInTimer = sentinel.prevInTimer;
+            sentinel.prevInTimer.nextInTimer = node;
+            sentinel.prevInTimer = node;
+        }
+        
+        void deschedule(Node node) {
+            unlinkTimer(node);
+        }
+        
+        // Expire every bucket the clock has moved past since the last advance
+        void advance(long currentTime) {
+            long previousTime = nanos;
+            nanos = currentTime;
+            for (int i = 0; i < shifts.length - 1; i++) {
+                long previousTicks = previousTime >>> shifts[i];
+                long currentTicks = currentTime >>> shifts[i];
+                long delta = currentTicks - previousTicks;
+                if (delta <= 0L) {
+                    break;
+                }
+                expire(i, previousTicks, delta);
+            }
+        }
+        
+        void clear() {
+            for (Node[] level : wheel) {
+                for (Node sentinel : level) {
+                    Node node = sentinel.nextInTimer;
+                    while (node != sentinel) {
+                        Node next = node.nextInTimer;
+                        node.prevInTimer = null;
+                        node.nextInTimer = null;
+                        node = next;
+                    }
+                    sentinel.prevInTimer = sentinel;
+                    sentinel.nextInTimer = sentinel;
+                }
+            }
+        }
+        
+        private void expire(int level, long previousTicks, long delta) {
+            Node[] timerWheel = wheel[level];
+            int mask = timerWheel.length - 1;
+            int steps = (int) Math.min(1 + delta, timerWheel.length);
+            int start = (int) (previousTicks & mask);
+            int end = start + steps;
+            
+            for (int i = start; i < end; i++) {
+                Node sentinel = timerWheel[i & mask];
+                Node node = sentinel.nextInTimer;
+                sentinel.prevInTimer = sentinel;
+                sentinel.nextInTimer = sentinel;
+                
+                while (node != sentinel) {
+                    Node next = node.nextInTimer;
+                    node.prevInTimer = null;
+                    node.nextInTimer = null;
+                    
+                    if (nanos - node.expirationTime >= 0) {
+                        // Already detached from the wheel, expireNode only drops it from the cache
+                        expireNode(node);
+                    } else {
+                        schedule(node);
+                    }
+                    node = next;
+                }
+            }
+        }
+        
+        private Node findBucket(long time) {
+            long duration = time - nanos;
+            if (duration < 0) {
+                // Already due: park it in the current tick so the next advance expires it
+                time = nanos;
+                duration = 0;
+            }
+            int length = wheel.length - 1;
+            for (int i = 0; i < length; i++) {
+                if (duration < spans[i + 1]) {
+                    long ticks = time >>> shifts[i];
+                    int index = (int) (ticks & (wheel[i].length - 1));
+                    return wheel[i][index];
+                }
+            }
+            return wheel[length][0];
+        }
+        
+        private void unlinkTimer(Node node) {
+            node.prevInTimer.nextInTimer = node.nextInTimer;
+            node.nextInTimer.prevInTimer = node.prevInTimer;
+            node.prevInTimer = null;
+            node.nextInTimer = null;
+        }
+    }
+    
+    // Get cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== Cache Statistics ===");
+        System.out.println("Capacity: " + capacity
+                + (capacity != targetCapacity ? " (shrinking to " + targetCapacity + ")" : ""));
+        System.out.println("Eviction Policy: " + policy);
         System.out.println("Current Size: " + size);
         System.out.println("Available Space: " + (capacity - size));
         System.out.println("Load Factor: " + String.format("%.2f", (double) size / capacity * 100) + "%");
+        if (weigher != null) {
+            System.out.println("Total Weight: " + totalWeight + " / " + maximumWeight
+                    + " (" + String.format("%.2f", (double) totalWeight / maximumWeight * 100) + "%)");
+        }
         System.out.println("Is Empty: " + isEmpty());
         System.out.println("Is Full: " + isFull());
         
-        if (!isEmpty()) {
+        if (sketch != null) {
+            System.out.println("Window / Probation / Protected weight: " + windowWeight + " / "
+                    + (totalWeight - windowWeight - protectedWeight) + " / " + protectedWeight);
+        } else if (!isEmpty()) {
             Node mru = head.next;
             Node lru = tail.prev;
             System.out.println("Most Recently Used: " + mru.key + " -> " + mru.value);
             System.out.println("Least Recently Used: " + lru.key + " -> " + lru.value);
         }
+        
+        if (statsCounter != null) {
+            CacheStats stats = statsCounter.snapshot();
+            System.out.println("Hits / Misses: " + stats.hitCount() + " / " + stats.missCount()
+                    + " (Hit Rate: " + String.format("%.2f", stats.hitRate() * 100) + "%)");
+            System.out.println("Puts: " + stats.putCount());
+            System.out.println("Evictions (size / expired): " + stats.evictionCount(RemovalCause.SIZE)
+                    + " / " + stats.evictionCount(RemovalCause.EXPIRED));
+            System.out.println("Get Latency p50 / p99: " + stats.getLatency().percentile(50) + " / "
+                    + stats.getLatency().percentile(99) + " ns");
+            System.out.println("Put Latency p50 / p99: " + stats.putLatency().percentile(50) + " / "
+                    + stats.putLatency().percentile(99) + " ns");
+        }
+    }
+}
+
+// Adaptive Replacement Cache (Megiddo & Modha). Resident entries are split between T1
+// (seen once recently) and T2 (seen at least twice); B1 and B2 remember the keys recently
+// evicted from each. A hit in B1 means T1 was too small and grows its target size p, a
+// hit in B2 shrinks it, so the recency/frequency balance tunes itself to the workload.
+class ARCCache<K, V> {
+    private static final int T1 = 0;
+    private static final int T2 = 1;
+    private static final int B1 = 2;
+    private static final int B2 = 3;
+    
+    private class Node {
+        K key;
+        V value;
+        Node prev;
+        Node next;
+        int list;
+        
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+    
+    private final int capacity;
+    private final Map<K, Node> cache;
+    // Sentinel heads per list; head.next is MRU and head.prev is LRU
+    private final Node[] heads;
+    private final int[] sizes = new int[4];
+    private int p; // target size of T1
+    
+    // Constructor
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ARCCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.cache = new HashMap<>();
+        this.heads = (Node[]) new ARCCache.Node[4];
+        for (int i = 0; i < heads.length; i++) {
+            Node sentinel = new Node(null, null);
+            sentinel.next = sentinel;
+            sentinel.prev = sentinel;
+            heads[i] = sentinel;
+        }
+    }
+    
+    // Get value by key; a hit promotes the entry to T2
+    public V get(K key) {
+        Node node = cache.get(key);
+        if (node == null || node.list >= B1) {
+            return null;
+        }
+        moveTo(node, T2);
+        return node.value;
+    }
+    
+    // Put key-value pair
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        Node node = cache.get(key);
+        if (node != null && node.list < B1) {
+            node.value = value;
+            moveTo(node, T2);
+            return;
+        }
+        
+        if (node != null) {
+            // Ghost hit: adapt p towards the list that would have kept the entry
+            if (node.list == B1) {
+                p = Math.min(capacity, p + Math.max(sizes[B2] / sizes[B1], 1));
+            } else {
+                p = Math.max(0, p - Math.max(sizes[B1] / sizes[B2], 1));
+            }
+            if (sizes[T1] + sizes[T2] >= capacity) {
+                replace(node.list == B2);
+            }
+            node.value = value;
+            moveTo(node, T2);
+            return;
+        }
+        
+        int t1b1 = sizes[T1] + sizes[B1];
+        int total = t1b1 + sizes[T2] + sizes[B2];
+        if (t1b1 >= capacity) {
+            if (sizes[T1] < capacity) {
+                discard(heads[B1].prev);
+                if (sizes[T1] + sizes[T2] >= capacity) {
+                    replace(false);
+                }
+            } else {
+                discard(heads[T1].prev);
+            }
+        } else if (total >= capacity) {
+            if (total >= 2 * capacity) {
+                discard(heads[B2].prev);
+            }
+            if (sizes[T1] + sizes[T2] >= capacity) {
+                replace(false);
+            }
+        }
+        
+        node = new Node(key, value);
+        cache.put(key, node);
+        link(node, T1);
+    }
+    
+    // Remove a key from cache (its ghost is forgotten too)
+    public boolean remove(K key) {
+        Node node = cache.get(key);
+        if (node == null) {
+            return false;
+        }
+        discard(node);
+        return node.list < B1;
+    }
+    
+    // Check if key exists
+    public boolean containsKey(K key) {
+        Node node = cache.get(key);
+        return node != null && node.list < B1;
+    }
+    
+    // Get current size
+    public int size() {
+        return sizes[T1] + sizes[T2];
+    }
+    
+    // Get capacity
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // Check if cache is empty
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    // Current target size of the recency list T1
+    public int getTargetRecencySize() {
+        return p;
+    }
+    
+    // Clear all entries and ghosts
+    public void clear() {
+        cache.clear();
+        for (Node sentinel : heads) {
+            sentinel.next = sentinel;
+            sentinel.prev = sentinel;
+        }
+        Arrays.fill(sizes, 0);
+        p = 0;
+    }
+    
+    // Get cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== ARC Cache Statistics ===");
+        System.out.println("Capacity: " + capacity);
+        System.out.println("T1 / T2 (resident): " + sizes[T1] + " / " + sizes[T2]);
+        System.out.println("B1 / B2 (ghosts): " + sizes[B1] + " / " + sizes[B2]);
+        System.out.println("Target T1 size: " + p);
+    }
+    
+    // Evict the LRU of T1 or T2 into its ghost list, keeping T1 near its target size
+    private void replace(boolean ghostHitInB2) {
+        boolean fromT1 = sizes[T1] > 0
+                && (sizes[T2] == 0 || sizes[T1] > p || (ghostHitInB2 && sizes[T1] == p));
+        if (fromT1) {
+            Node victim = heads[T1].prev;
+            victim.value = null;
+            moveTo(victim, B1);
+        } else {
+            Node victim = heads[T2].prev;
+            victim.value = null;
+            moveTo(victim, B2);
+        }
+    }
+    
+    private void discard(Node node) {
+        unlink(node);
+        cache.remove(node.key);
+    }
+    
+    private void moveTo(Node node, int list) {
+        unlink(node);
+        link(node, list);
+    }
+    
+    private void link(Node node, int list) {
+        Node sentinel = heads[list];
+        node.list = list;
+        node.prev = sentinel;
+        node.next = sentinel.next;
+        sentinel.next.prev = node;
+        sentinel.next = node;
+        sizes[list]++;
+    }
+    
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        sizes[node.list]--;
+    }
+}
+
+// Low Inter-reference Recency Set cache (Jiang & Zhang). Entries re-referenced within a
+// short distance are LIR and protected; the rest are HIR, and only a small HIR share
+// (1% of capacity) stays resident in queue Q. Recency stack S keeps LIR entries plus
+// recently seen HIR keys, including evicted ones as ghosts, so an HIR key whose reuse
+// distance beats the oldest LIR entry is promoted in its place. The LIR set thus follows
+// the workload by itself, and loops larger than the cache no longer flush it.
+class LIRSCache<K, V> {
+    private static final int LIR = 0;
+    private static final int HIR_RESIDENT = 1;
+    private static final int HIR_NONRESIDENT = 2;
+    
+    private class Node {
+        K key;
+        V value;
+        int status;
+        // Links in stack S
+        Node prevInStack;
+        Node nextInStack;
+        // Links in queue Q for resident HIR entries, in the ghost queue for non-resident ones
+        Node prevInQueue;
+        Node nextInQueue;
+        
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+    
+    private final int capacity;
+    private final int lirCapacity;
+    private final int ghostCapacity;
+    private final Map<K, Node> cache;
+    // Sentinels; next is the top/MRU end, prev is the bottom/oldest end
+    private final Node stack;
+    private final Node queue;
+    private final Node ghosts;
+    private int lirCount;
+    private int hirCount;
+    private int ghostCount;
+    
+    // Constructor
+    public LIRSCache(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        this.capacity = capacity;
+        this.lirCapacity = capacity - Math.max(1, capacity / 100);
+        this.ghostCapacity = capacity;
+        this.cache = new HashMap<>();
+        this.stack = new Node(null, null);
+        this.queue = new Node(null, null);
+        this.ghosts = new Node(null, null);
+        stack.nextInStack = stack;
+        stack.prevInStack = stack;
+        queue.nextInQueue = queue;
+        queue.prevInQueue = queue;
+        ghosts.nextInQueue = ghosts;
+        ghosts.prevInQueue = ghosts;
+    }
+    
+    // Get value by key
+    public V get(K key) {
+        Node node = cache.get(key);
+        if (node == null || node.status == HIR_NONRESIDENT) {
+            return null;
+        }
+        onHit(node);
+        return node.value;
     }
-}
\ No newline at end of file
+    
+    // Put key-value pair
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        Node node = cache.get(key);
+        if (node != null && node.status != HIR_NONRESIDENT) {
+            node.value = value;
+            onHit(node);
+            return;
+        }
+        
+        if (node != null) {
+            // Take the ghost off the ghost queue so freeing a slot cannot discard it
+            unlinkQueue(node);
+            ghostCount--;
+            node.status = HIR_RESIDENT;
+        }
+        if (lirCount + hirCount >= capacity) {
+            evictResidentHir();
+        }
+        
+        if (node == null) {
+            node = new Node(key, value);
+            cache.put(key, node);
+        }
+        node.value = value;
+        if (node.nextInStack != null) {
+            // Ghost still in S: its reuse distance beats the oldest LIR entry
+            moveToStackTop(node);
+            promote(node);
+            return;
+        }
+        pushStack(node);
+        if (lirCount < lirCapacity) {
+            // Warm-up (or room left by removals): fill the LIR set directly
+            node.status = LIR;
+            lirCount++;
+            pruneStack();
+        } else {
+            node.status = HIR_RESIDENT;
+            linkQueue(queue, node);
+            hirCount++;
+        }
+    }
+    
+    // Remove a key from cache (a ghost of the key is forgotten too)
+    public boolean remove(K key) {
+        Node node = cache.remove(key);
+        if (node == null) {
+            return false;
+        }
+        if (node.nextInStack != null) {
+            unlinkStack(node);
+        }
+        if (node.status == LIR) {
+            lirCount--;
+        } else if (node.status == HIR_RESIDENT) {
+            unlinkQueue(node);
+            hirCount--;
+        } else {
+            unlinkQueue(node);
+            ghostCount--;
+            return false;
+        }
+        pruneStack();
+        return true;
+    }
+    
+    // Check if key exists
+    public boolean containsKey(K key) {
+        Node node = cache.get(key);
+        return node != null && node.status != HIR_NONRESIDENT;
+    }
+    
+    // Get current size
+    public int size() {
+        return lirCount + hirCount;
+    }
+    
+    // Get capacity
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // Check if cache is empty
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    // Clear all entries and ghosts
+    public void clear() {
+        cache.clear();
+        stack.nextInStack = stack;
+        stack.prevInStack = stack;
+        queue.nextInQueue = queue;
+        queue.prevInQueue = queue;
+        ghosts.nextInQueue = ghosts;
+        ghosts.prevInQueue = ghosts;
+        lirCount = 0;
+        hirCount = 0;
+        ghostCount = 0;
+    }
+    
+    // Get cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== LIRS Cache Statistics ===");
+        System.out.println("Capacity: " + capacity + " (LIR " + lirCapacity + ", HIR " + (capacity - lirCapacity) + ")");
+        System.out.println("LIR / resident HIR: " + lirCount + " / " + hirCount);
+        System.out.println("Non-resident HIR ghosts: " + ghostCount);
+    }
+    
+    private void onHit(Node node) {
+        if (node.status == LIR) {
+            boolean wasBottom = stack.prevInStack == node;
+            moveToStackTop(node);
+            if (wasBottom) {
+                pruneStack();
+            }
+        } else if (node.nextInStack != null) {
+            // Resident HIR still in S: re-referenced within the LIR horizon
+            unlinkQueue(node);
+            hirCount--;
+            moveToStackTop(node);
+            promote(node);
+        } else if (lirCount < lirCapacity) {
+            // Removals left room in the LIR set
+            unlinkQueue(node);
+            hirCount--;
+            pushStack(node);
+            node.status = LIR;
+            lirCount++;
+            pruneStack();
+        } else {
+            // Resident HIR that fell out of S stays HIR
+            pushStack(node);
+            unlinkQueue(node);
+            linkQueue(queue, node);
+        }
+    }
+    
+    // Make a node at the top of S an LIR entry, demoting the bottom LIR entry if over budget
+    private void promote(Node node) {
+        node.status = LIR;
+        lirCount++;
+        while (lirCount > lirCapacity) {
+            Node bottom = stack.prevInStack;
+            unlinkStack(bottom);
+            bottom.status = HIR_RESIDENT;
+            linkQueue(queue, bottom);
+            lirCount--;
+            hirCount++;
+            pruneStack();
+        }
+        pruneStack();
+    }
+    
+    // Free a resident slot: the front of Q leaves; if S still holds it, it lingers as a ghost
+    private void evictResidentHir() {
+        Node victim = queue.prevInQueue;
+        if (victim == queue) {
+            // No resident HIR entries (after removals): fall back to the bottom LIR entry
+            victim = stack.prevInStack;
+            unlinkStack(victim);
+            cache.remove(victim.key);
+            lirCount--;
+            pruneStack();
+            return;
+        }
+        unlinkQueue(victim);
+        hirCount--;
+        if (victim.nextInStack == null) {
+            cache.remove(victim.key);
+            return;
+        }
+        victim.status = HIR_NONRESIDENT;
+        victim.value = null;
+        linkQueue(ghosts, victim);
+        ghostCount++;
+        if (ghostCount > ghostCapacity) {
+            Node oldest = ghosts.prevInQueue;
+            unlinkQueue(oldest);
+            unlinkStack(oldest);
+            cache.remove(oldest.key);
+            ghostCount--;
+        }
+    }
+    
+    // Pop HIR entries off the bottom of S until an LIR entry is at the bottom
+    private void pruneStack() {
+        Node bottom = stack.prevInStack;
+        while (bottom != stack && bottom.status != LIR) {
+            unlinkStack(bottom);
+            if (bottom.status == HIR_NONRESIDENT) {
+                unlinkQueue(bottom);
+                cache.remove(bottom.key);
+                ghostCount--;
+            }
+            bottom = stack.prevInStack;
+        }
+    }
+    
+    private void pushStack(Node node) {
+        node.prevInStack = stack;
+        node.nextInStack = stack.nextInStack;
+        stack.nextInStack.prevInStack = node;
+        stack.nextInStack = node;
+    }
+    
+    private void moveToStackTop(Node node) {
+        unlinkStack(node);
+        pushStack(node);
+    }
+    
+    private void unlinkStack(Node node) {
+        node.prevInStack.nextInStack = node.nextInStack;
+        node.nextInStack.prevInStack = node.prevInStack;
+        node.prevInStack = null;
+        node.nextInStack = null;
+    }
+    
+    private void linkQueue(Node sentinel, Node node) {
+        node.prevInQueue = sentinel;
+        node.nextInQueue = sentinel.nextInQueue;
+        sentinel.nextInQueue.prevInQueue = node;
+        sentinel.nextInQueue = node;
+    }
+    
+    private void unlinkQueue(Node node) {
+        node.prevInQueue.nextInQueue = node.nextInQueue;
+        node.nextInQueue.prevInQueue = node.prevInQueue;
+        node.prevInQueue = null;
+        node.nextInQueue = null;
+    }
+}
+
+// Benchmark harness for the cache implementations: throughput, p99 latency and
+// allocation per operation for get/put/mixed workloads over uniform, Zipfian and
+// scan-heavy key distributions at 1, 4 and 16 threads.
+// Run with: java LRUCacheSystem benchmark [measureMillis] [warmupMillis]
+final class CacheBenchmark {
+    private static final int KEY_SPACE = 100_000;
+    private static final int CACHE_CAPACITY = 10_000;
+    private static final int KEYS_PER_THREAD = 1 << 16;
+    private static final int LATENCY_SAMPLE_MASK = 1023; // time one operation in 1024
+    private static final int[] THREAD_COUNTS = { 1, 4, 16 };
+    
+    enum Distribution { UNIFORM, ZIPFIAN, SCAN }
+    
+    enum Workload {
+        GET(100), PUT(0), MIXED(75);
+        
+        final int readPercent;
+        
+        Workload(int readPercent) {
+            this.readPercent = readPercent;
+        }
+    }
+    
+    // Common face of every benchmarked cache
+    interface Target {
+        Integer get(Integer key);
+        void put(Integer key, Integer value);
+    }
+    
+    // Factory for a fresh, prefilled target per run
+    interface TargetFactory {
+        Target create();
+    }
+    
+    private CacheBenchmark() {}
+    
+    public static void run(String[] args) {
+        long measureMillis = (args.length > 1) ? Long.parseLong(args[1]) : 1000;
+        long warmupMillis = (args.length > 2) ? Long.parseLong(args[2]) : 500;
+        
+        Map<String, TargetFactory> targets = new LinkedHashMap<>();
+        targets.put("LRUCache (synchronized)", CacheBenchmark::synchronizedLruCache);
+        targets.put("ConcurrentLRUCache", () -> concurrentLruCache(false));
+        targets.put("ConcurrentLRUCache (buffered)", () -> concurrentLruCache(true));
+        targets.put("LinkedHashMap (synchronized)", CacheBenchmark::synchronizedLinkedHashMap);
+        
+        System.out.println("=== CACHE BENCHMARK ===");
+        System.out.println("Key space: " + KEY_SPACE + ", capacity: " + CACHE_CAPACITY
+                + ", warmup: " + warmupMillis + " ms, measurement: " + measureMillis + " ms");
+        System.out.println(String.format("%-30s %-8s %-6s %7s %14s %10s %8s",
+                "Implementation", "Keys", "Ops", "Threads", "Ops/sec", "p99 (ns)", "B/op"));
+        
+        for (Map.Entry<String, TargetFactory> target : targets.entrySet()) {
+            for (Distribution distribution : Distribution.values()) {
+                for (Workload workload : Workload.values()) {
+                    for (int threads : THREAD_COUNTS) {
+                        Result result = measure(target.getValue(), distribution, workload, threads,
+                                warmupMillis, measureMillis);
+                        System.out.println(String.format("%-30s %-8s %-6s %7d %,14.0f %10d %8.1f",
+                                target.getKey(), distribution, workload, threads,
+                                result.opsPerSecond, result.p99Nanos, result.bytesPerOp));
+                    }
+                }
+            }
+        }
+    }
+    
+    // One benchmark configuration: warm up, then measure on a fresh cache
+    private static Result measure(TargetFactory factory, Distribution distribution, Workload workload,
+                                  int threads, long warmupMillis, long measureMillis) {
+        Integer[][] keys = new Integer[threads][];
+        for (int t = 0; t < threads; t++) {
+            keys[t] = generateKeys(distribution, KEYS_PER_THREAD, 31L * t + distribution.ordinal());
+        }
+        
+        Target target = factory.create();
+        runThreads(target, keys, workload, warmupMillis, new LatencyHistogram());
+        
+        LatencyHistogram latency = new LatencyHistogram();
+        long[] totals = runThreads(target, keys, workload, measureMillis, latency);
+        long operations = totals[0];
+        long allocatedBytes = totals[1];
+        
+        Result result = new Result();
+        result.opsPerSecond = operations * 1000.0 / measureMillis;
+        result.p99Nanos = latency.snapshot().percentile(99);
+        result.bytesPerOp = (allocatedBytes < 0) ? Double.NaN : (double) allocatedBytes / Math.max(1, operations);
+        return result;
+    }
+    
+    // Run all threads for the given time; returns {operations, allocated bytes or -1}
+    private static long[] runThreads(Target target, Integer[][] keys, Workload workload,
+                                     long durationMillis, LatencyHistogram latency) {
+        int threads = keys.length;
+        AtomicLong operations = new AtomicLong();
+        AtomicLong allocated = new AtomicLong();
+        AtomicInteger unsupported = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger stop = new AtomicInteger();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean =
+                (threadBean instanceof com.sun.management.ThreadMXBean)
+                        ? (com.sun.management.ThreadMXBean) threadBean : null;
+        
+        for (int t = 0; t < threads; t++) {
+            final Integer[] threadKeys = keys[t];
+            final int seed = t;
+            Thread worker = new Thread(() -> {
+                long threadId = Thread.currentThread().getId();
+                int mask = threadKeys.length - 1;
+                int index = seed * 7919;
+                int opCounter = seed;
+                long ops = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done.countDown();
+                    return;
+                }
+                long allocatedBefore = (allocationBean == null) ? -1 : allocationBean.getThreadAllocatedBytes(threadId);
+                
+                while (stop.get() == 0) {
+                    for (int i = 0; i < 64; i++) {
+                        Integer key = threadKeys[index++ & mask];
+                        boolean read = (opCounter++ % 100) < workload.readPercent;
+                        if ((ops & LATENCY_SAMPLE_MASK) == 0) {
+                            long begin = System.nanoTime();
+                            execute(target, key, read);
+                            latency.record(System.nanoTime() - begin);
+                        } else {
+                            execute(target, key, read);
+                        }
+                        ops++;
+                    }
+                }
+                
+                if (allocatedBefore >= 0) {
+                    allocated.addAndGet(allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore);
+                } else {
+                    unsupported.incrementAndGet();
+                }
+                operations.addAndGet(ops);
+                done.countDown();
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        
+        try {
+            ready.await();
+            start.countDown();
+            Thread.sleep(durationMillis);
+            stop.set(1);
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new long[] { operations.get(), unsupported.get() > 0 ? -1 : allocated.get() };
+    }
+    
+    // Reads behave like a read-through cache: a miss is followed by a put
+    private static void execute(Target target, Integer key, boolean read) {
+        if (read) {
+            if (target.get(key) == null) {
+                target.put(key, key);
+            }
+        } else {
+            target.put(key, key);
+        }
+    }
+    
+    // Pre-boxed key stream so the benchmark loop itself allocates nothing
+    static Integer[] generateKeys(Distribution distribution, int count, long seed) {
+        Random random = new Random(seed);
+        ZipfianGenerator zipfian = new ZipfianGenerator(KEY_SPACE, 0.99, random);
+        Integer[] keys = new Integer[count];
+        int scanCursor = random.nextInt(KEY_SPACE);
+        for (int i = 0; i < count; i++) {
+            int key;
+            switch (distribution) {
+                case UNIFORM:
+                    key = random.nextInt(KEY_SPACE);
+                    break;
+                case ZIPFIAN:
+                    key = zipfian.next();
+                    break;
+                default:
+                    // 80% sequential scan over the whole key space, 20% Zipfian hot keys
+                    if (random.nextInt(100) < 80) {
+                        key = scanCursor;
+                        scanCursor = (scanCursor + 1) % KEY_SPACE;
+                    } else {
+                        key = zipfian.next();
+                    }
+                    break;
+            }
+            keys[i] = Integer.valueOf(key);
+        }
+        return keys;
+    }
+    
+    private static Target synchronizedLruCache() {
+        LRUCache<Integer, Integer> cache = new LRUCache<>(CACHE_CAPACITY);
+        Target target = new Target() {
+            @Override
+            public synchronized Integer get(Integer key) {
+                return cache.get(key);
+            }
+            
+            @Override
+            public synchronized void put(Integer key, Integer value) {
+                cache.put(key, value);
+            }
+        };
+        prefill(target);
+        return target;
+    }
+    
+    private static Target concurrentLruCache(boolean bufferedReads) {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(CACHE_CAPACITY, 64, bufferedReads);
+        Target target = new Target() {
+            @Override
+            public Integer get(Integer key) {
+                return cache.get(key);
+            }
+            
+            @Override
+            public void put(Integer key, Integer value) {
+                cache.put(key, value);
+            }
+        };
+        prefill(target);
+        return target;
+    }
+    
+    private static Target synchronizedLinkedHashMap() {
+        Map<Integer, Integer> map = Collections.synchronizedMap(
+                new LinkedHashMap<Integer, Integer>(CACHE_CAPACITY * 2, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                        return size() > CACHE_CAPACITY;
+                    }
+                });
+        Target target = new Target() {
+            @Override
+            public Integer get(Integer key) {
+                return map.get(key);
+            }
+            
+            @Override
+            public void put(Integer key, Integer value) {
+                map.put(key, value);
+            }
+        };
+        prefill(target);
+        return target;
+    }
+    
+    private static void prefill(Target target) {
+        for (int i = 0; i < CACHE_CAPACITY; i++) {
+            target.put(i, i);
+        }
+    }
+    
+    private static final class Result {
+        double opsPerSecond;
+        long p99Nanos;
+        double bytesPerOp;
+    }
+}
+
+// Replays recorded access traces against the cache policies and prints miss-ratio curves.
+// LRU is computed for every capacity in one pass with Mattson's stack-distance algorithm;
+// other policies run one simulated LRUCache per capacity, in parallel across cores.
+// Traces are either text (one key per line) or binary (big-endian 8-byte keys).
+// Run with: java LRUCacheSystem simulate <trace> <capacity,capacity,...> [--binary]
+final class CacheSimulator {
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final String[] SIMULATED_POLICIES = { "W-TinyLFU", "ARC", "LIRS" };
+    
+    private CacheSimulator() {}
+    
+    public static void run(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java LRUCacheSystem simulate <trace> <capacity,capacity,...> [--binary]");
+            return;
+        }
+        Path trace = Paths.get(args[1]);
+        String[] parts = args[2].split(",");
+        int[] capacities = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            capacities[i] = Integer.parseInt(parts[i].trim());
+        }
+        boolean binary = args.length > 3 && args[3].equals("--binary");
+        
+        try {
+            printCurves(capacities, simulate(trace, binary, capacities));
+        } catch (IOException e) {
+            System.out.println("Failed to read trace: " + e.getMessage());
+        }
+    }
+    
+    // Miss ratio per policy name, one value per capacity
+    public static Map<String, double[]> simulate(Path trace, boolean binary, int[] capacities) throws IOException {
+        int[] sorted = capacities.clone();
+        Arrays.sort(sorted);
+        Map<String, double[]> curves = new LinkedHashMap<>();
+        
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // Single pass yields the whole LRU curve
+            Future<double[]> lruCurve = pool.submit(() -> {
+                StackDistanceAnalyzer analyzer = new StackDistanceAnalyzer(sorted[sorted.length - 1]);
+                forEachKey(trace, binary, analyzer);
+                return analyzer.missRatios(sorted);
+            });
+            
+            // Policies without the inclusion property need one simulation per capacity
+            Map<String, List<Future<Double>>> runs = new LinkedHashMap<>();
+            for (String policy : SIMULATED_POLICIES) {
+                List<Future<Double>> results = new ArrayList<>();
+                for (int capacity : sorted) {
+                    results.add(pool.submit(() -> simulatePolicy(trace, binary, policy, capacity)));
+                }
+                runs.put(policy, results);
+            }
+            
+            curves.put("LRU", lruCurve.get());
+            for (Map.Entry<String, List<Future<Double>>> run : runs.entrySet()) {
+                double[] curve = new double[sorted.length];
+                for (int i = 0; i < sorted.length; i++) {
+                    curve[i] = run.getValue().get(i).get();
+                }
+                curves.put(run.getKey(), curve);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Simulation interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        // Re-order results to match the requested capacities
+        Map<String, double[]> ordered = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> curve : curves.entrySet()) {
+            double[] values = new double[capacities.length];
+            for (int i = 0; i < capacities.length; i++) {
+                values[i] = curve.getValue()[Arrays.binarySearch(sorted, capacities[i])];
+            }
+            ordered.put(curve.getKey(), values);
+        }
+        return ordered;
+    }
+    
+    // One row per capacity, one column of miss ratios per policy
+    public static void printCurves(int[] capacities, Map<String, double[]> curves) {
+        System.out.println("Miss ratio by capacity (lower is better):");
+        StringBuilder header = new StringBuilder(String.format("%-12s", "Capacity"));
+        for (String policy : curves.keySet()) {
+            header.append(String.format("%14s", policy));
+        }
+        System.out.println(header);
+        for (int i = 0; i < capacities.length; i++) {
+            StringBuilder row = new StringBuilder(String.format("%-12d", capacities[i]));
+            for (double[] curve : curves.values()) {
+                row.append(String.format("%13.2f%%", curve[i] * 100));
+            }
+            System.out.println(row);
+        }
+    }
+    
+    private static double simulatePolicy(Path trace, boolean binary, String policy, int capacity) throws IOException {
+        LongPredicate cache = newSimulatedCache(policy, capacity);
+        long[] misses = new long[1];
+        long accesses = forEachKey(trace, binary, key -> {
+            if (!cache.test(key)) {
+                misses[0]++;
+            }
+        });
+        return (accesses == 0) ? 0.0 : (double) misses[0] / accesses;
+    }
+    
+    // Cache access that returns whether the key hit, inserting it on a miss
+    private static LongPredicate newSimulatedCache(String policy, int capacity) {
+        switch (policy) {
+            case "W-TinyLFU": {
+                LRUCache<Long, Boolean> cache = new LRUCache<>(capacity, EvictionPolicy.WINDOW_TINY_LFU);
+                return key -> cache.get(key) != null || putAbsent(cache::put, key);
+            }
+            case "ARC": {
+                ARCCache<Long, Boolean> cache = new ARCCache<>(capacity);
+                return key -> cache.get(key) != null || putAbsent(cache::put, key);
+            }
+            case "LIRS": {
+                LIRSCache<Long, Boolean> cache = new LIRSCache<>(Math.max(2, capacity));
+                return key -> cache.get(key) != null || putAbsent(cache::put, key);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+    }
+    
+    private static boolean putAbsent(BiConsumer<Long, Boolean> put, long key) {
+        put.accept(key, Boolean.TRUE);
+        return false;
+    }
+    
+    // Stream every key of the trace through a channel buffer; returns the number of keys
+    public static long forEachKey(Path trace, boolean binary, LongConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+            long count = 0;
+            
+            if (binary) {
+                while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                    buffer.flip();
+                    if (buffer.remaining() < Long.BYTES) {
+                        break; // trailing partial record
+                    }
+                    while (buffer.remaining() >= Long.BYTES) {
+                        consumer.accept(buffer.getLong());
+                        count++;
+                    }
+                    buffer.compact();
+                }
+                return count;
+            }
+            
+            // Text: numeric lines are used as-is, anything else is hashed (FNV-1a 64)
+            long value = 0;
+            long hash = 0xcbf29ce484222325L;
+            boolean numeric = true;
+            int length = 0;
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n' || b == '\r') {
+                        if (length > 0) {
+                            consumer.accept(numeric ? value : hash);
+                            count++;
+                        }
+                        value = 0;
+                        hash = 0xcbf29ce484222325L;
+                        numeric = true;
+                        length = 0;
+                        continue;
+                    }
+                    length++;
+                    hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+                    if (numeric && b >= '0' && b <= '9' && length <= 18) {
+                        value = value * 10 + (b - '0');
+                    } else {
+                        numeric = false;
+                    }
+                }
+                buffer.clear();
+            }
+            if (length > 0) {
+                consumer.accept(numeric ? value : hash);
+                count++;
+            }
+            return count;
+        }
+    }
+}
+
+// Mattson stack-distance analysis for LRU. The reuse distance of an access is the number of
+// distinct keys touched since the previous access to the same key; an LRU cache of size C hits
+// exactly when that distance is below C. A Fenwick tree over access times marks each key's
+// latest access, so every distance costs O(log n) and one pass gives the whole curve.
+class StackDistanceAnalyzer implements LongConsumer {
+    private final int maxDistance;
+    private final long[] distanceCounts; // distanceCounts[d] = accesses with reuse distance d
+    private final Map<Long, Integer> lastAccess = new HashMap<>();
+    private int[] tree = new int[1 << 16];
+    private int time;
+    private long accesses;
+    
+    public StackDistanceAnalyzer(int maxCapacity) {
+        this.maxDistance = maxCapacity;
+        this.distanceCounts = new long[maxCapacity];
+    }
+    
+    @Override
+    public void accept(long key) {
+        accesses++;
+        if (time + 1 >= tree.length) {
+            compactOrGrow();
+        }
+        
+        Integer previous = lastAccess.put(key, time + 1);
+        if (previous != null) {
+            // Distinct keys whose latest access lies strictly after the previous one
+            int distance = prefixSum(time) - prefixSum(previous);
+            if (distance < maxDistance) {
+                distanceCounts[distance]++;
+            }
+            update(previous, -1);
+        }
+        time++;
+        update(time, 1);
+    }
+    
+    public long getAccessCount() {
+        return accesses;
+    }
+    
+    // Miss ratio for each capacity (capacities must not exceed the analyzer's maximum)
+    public double[] missRatios(int[] capacities) {
+        double[] ratios = new double[capacities.length];
+        for (int i = 0; i < capacities.length; i++) {
+            long hits = 0;
+            for (int d = 0; d < Math.min(capacities[i], maxDistance); d++) {
+                hits += distanceCounts[d];
+            }
+            ratios[i] = (accesses == 0) ? 0.0 : 1.0 - (double) hits / accesses;
+        }
+        return ratios;
+    }
+    
+    // Renumber latest-access times densely when the tree is mostly stale, else double it
+    private void compactOrGrow() {
+        int live = lastAccess.size();
+        int size = (live * 2 < tree.length) ? tree.length : tree.length * 2;
+        
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(lastAccess.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        tree = new int[size];
+        time = 0;
+        for (Map.Entry<Long, Integer> entry : entries) {
+            time++;
+            entry.setValue(time);
+            update(time, 1);
+        }
+    }
+    
+    private void update(int index, int delta) {
+        for (int i = index; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+    
+    private int prefixSum(int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
+
+// Zipfian integer generator over [0, items) (Gray et al., as used by YCSB)
+class ZipfianGenerator {
+    private final int items;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+    private final Random random;
+    
+    public ZipfianGenerator(int items, double theta, Random random) {
+        this.items = items;
+        this.theta = theta;
+        this.random = random;
+        this.zetaN = zeta(items, theta);
+        double zeta2 = zeta(2, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+    }
+    
+    public int next() {
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return (int) (items * Math.pow(eta * u - eta + 1, alpha)) % items;
+    }
+    
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
+
+// Hook for observing LRUCache operations. All callbacks default to no-ops, so a cache
+// without a listener does no logging or string building on its hot paths.
+interface CacheListener<K, V> {
+    default void onHit(LRUCache<K, V> cache, K key, V value) {}
+    default void onMiss(LRUCache<K, V> cache, K key) {}
+    default void onPut(LRUCache<K, V> cache, K key, V value, boolean updated) {}
+    default void onEvict(LRUCache<K, V> cache, K key, V value) {}
+    default void onExpire(LRUCache<K, V> cache, K key, V value) {}
+    default void onRefresh(LRUCache<K, V> cache, K key, V value) {}
+    default void onRemove(LRUCache<K, V> cache, K key, boolean found) {}
+    default void onClear(LRUCache<K, V> cache) {}
+    
+    @SuppressWarnings("unchecked")
+    static <K, V> CacheListener<K, V> none() {
+        return (CacheListener<K, V>) NoOpCacheListener.INSTANCE;
+    }
+}
+
+// Shared quiet listener
+final class NoOpCacheListener implements CacheListener<Object, Object> {
+    static final NoOpCacheListener INSTANCE = new NoOpCacheListener();
+    
+    private NoOpCacheListener() {}
+}
+
+// Console listener used by the demo: logs every operation and prints the cache state
+class VerboseCacheListener<K, V> implements CacheListener<K, V> {
+    @Override
+    public void onHit(LRUCache<K, V> cache, K key, V value) {
+        System.out.println("Cache HIT for key: " + key + " -> " + value);
+        cache.displayCache();
+    }
+    
+    @Override
+    public void onMiss(LRUCache<K, V> cache, K key) {
+        System.out.println("Cache MISS for key: " + key);
+    }
+    
+    @Override
+    public void onPut(LRUCache<K, V> cache, K key, V value, boolean updated) {
+        if (updated) {
+            System.out.println("Updating existing key: " + key + " with value: " + value);
+        } else {
+            System.out.println("Adding new key: " + key + " with value: " + value);
+        }
+        cache.displayCache();
+    }
+    
+    @Override
+    public void onEvict(LRUCache<K, V> cache, K key, V value) {
+        System.out.println("Evicted LRU key: " + key);
+    }
+    
+    @Override
+    public void onExpire(LRUCache<K, V> cache, K key, V value) {
+        System.out.println("Expired key: " + key);
+    }
+    
+    @Override
+    public void onRefresh(LRUCache<K, V> cache, K key, V value) {
+        System.out.println("Refreshed key: " + key + " -> " + value);
+    }
+    
+    @Override
+    public void onRemove(LRUCache<K, V> cache, K key, boolean found) {
+        if (!found) {
+            System.out.println("Key not found for removal: " + key);
+            return;
+        }
+        System.out.println("Removed key: " + key);
+        cache.displayCache();
+    }
+    
+    @Override
+    public void onClear(LRUCache<K, V> cache) {
+        System.out.println("Cache cleared");
+        cache.displayCache();
+    }
+}
+
+// LRU cache specialised for primitive long keys and values. Entries live in parallel arrays
+// (keys, values, prev/next indices) and an open-addressing index of entry numbers, so
+// get/put never box or allocate and each mapping costs about 32 bytes.
+class LongLRUCache {
+    private static final int NIL = -1;
+    
+    private final int capacity;
+    private final long[] keys;
+    private final long[] values;
+    private final int[] prev;
+    private final int[] next;
+    private final int[] table; // entry index + 1, 0 marks an empty slot
+    private final int tableMask;
+    private int head = NIL; // most recently used entry
+    private int tail = NIL; // least recently used entry
+    private int size;
+    
+    // Constructor
+    public LongLRUCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (capacity > (1 << 29)) {
+            throw new IllegalArgumentException("Capacity too large: " + capacity);
+        }
+        
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        
+        // Keep the index at most half full so probe chains stay short
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new int[tableSize];
+        this.tableMask = tableSize - 1;
+    }
+    
+    // Get value by key, or defaultValue on a miss
+    public long get(long key, long defaultValue) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        int entry = table[slot] - 1;
+        moveToHead(entry);
+        return values[entry];
+    }
+    
+    // Put key-value pair
+    public void put(long key, long value) {
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            int entry = table[slot] - 1;
+            values[entry] = value;
+            moveToHead(entry);
+            return;
+        }
+        
+        int entry;
+        if (size < capacity) {
+            // Entries are kept dense: indices 0..size-1 are always in use
+            entry = size++;
+        } else {
+            // Reuse the least recently used entry's arrays
+            entry = tail;
+            deleteSlot(findSlot(keys[entry]));
+            unlink(entry);
+        }
+        
+        keys[entry] = key;
+        values[entry] = value;
+        insertSlot(key, entry);
+        linkFirst(entry);
+    }
+    
+    // Remove a key from cache
+    public boolean remove(long key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return false;
+        }
+        int entry = table[slot] - 1;
+        deleteSlot(slot);
+        unlink(entry);
+        
+        // Move the last entry into the hole to keep entries dense
+        int last = --size;
+        if (entry != last) {
+            keys[entry] = keys[last];
+            values[entry] = values[last];
+            table[findSlot(keys[last])] = entry + 1;
+            prev[entry] = prev[last];
+            next[entry] = next[last];
+            if (prev[entry] != NIL) {
+                next[prev[entry]] = entry;
+            } else {
+                head = entry;
+            }
+            if (next[entry] != NIL) {
+                prev[next[entry]] = entry;
+            } else {
+                tail = entry;
+            }
+        }
+        return true;
+    }
+    
+    // Check if key exists
+    public boolean containsKey(long key) {
+        return findSlot(key) >= 0;
+    }
+    
+    // Get current size
+    public int size() {
+        return size;
+    }
+    
+    // Get capacity
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // Check if cache is empty
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    // Check if cache is full
+    public boolean isFull() {
+        return size == capacity;
+    }
+    
+    // Clear all entries
+    public void clear() {
+        Arrays.fill(table, 0);
+        head = NIL;
+        tail = NIL;
+        size = 0;
+    }
+    
+    // Display current cache state
+    public void displayCache() {
+        if (size == 0) {
+            System.out.println("Cache is empty");
+            return;
+        }
+        
+        System.out.print("Cache (MRU -> LRU): ");
+        for (int entry = head; entry != NIL; entry = next[entry]) {
+            System.out.print("(" + keys[entry] + ":" + values[entry] + ") ");
+        }
+        System.out.println(" | Size: " + size + "/" + capacity);
+    }
+    
+    // Index slot holding the key, or -1
+    private int findSlot(long key) {
+        int slot = hash(key) & tableMask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (keys[entry - 1] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+    
+    private void insertSlot(long key, int entry) {
+        int slot = hash(key) & tableMask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        table[slot] = entry + 1;
+    }
+    
+    // Linear-probing delete: shift later members of the probe chain back into the gap
+    private void deleteSlot(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & tableMask;
+            int entry = table[slot];
+            if (entry == 0) {
+                break;
+            }
+            int home = hash(keys[entry - 1]) & tableMask;
+            boolean movable = (slot > gap)
+                    ? (home <= gap || home > slot)
+                    : (home <= gap && home > slot);
+            if (movable) {
+                table[gap] = entry;
+                gap = slot;
+            }
+        }
+        table[gap] = 0;
+    }
+    
+    private void linkFirst(int entry) {
+        prev[entry] = NIL;
+        next[entry] = head;
+        if (head != NIL) {
+            prev[head] = entry;
+        } else {
+            tail = entry;
+        }
+        head = entry;
+    }
+    
+    private void unlink(int entry) {
+        int before = prev[entry];
+        int after = next[entry];
+        if (before != NIL) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after != NIL) {
+            prev[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+    
+    private void moveToHead(int entry) {
+        if (entry != head) {
+            unlink(entry);
+            linkFirst(entry);
+        }
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
+
+// LRU cache specialised for primitive int keys and values. Entries live in parallel arrays
+// (keys, values, prev/next indices) and an open-addressing index of entry numbers, so
+// get/put never box or allocate and each mapping costs about 24 bytes.
+class IntLRUCache {
+    private static final int NIL = -1;
+    
+    private final int capacity;
+    private final int[] keys;
+    private final int[] values;
+    private final int[] prev;
+    private final int[] next;
+    private final int[] table; // entry index + 1, 0 marks an empty slot
+    private final int tableMask;
+    private int head = NIL; // most recently used entry
+    private int tail = NIL; // least recently used entry
+    private int size;
+    
+    // Constructor
+    public IntLRUCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (capacity > (1 << 29)) {
+            throw new IllegalArgumentException("Capacity too large: " + capacity);
+        }
+        
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        
+        // Keep the index at most half full so probe chains stay short
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new int[tableSize];
+        this.tableMask = tableSize - 1;
+    }
+    
+    // Get value by key, or defaultValue on a miss
+    public int get(int key, int defaultValue) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        int entry = table[slot] - 1;
+        moveToHead(entry);
+        return values[entry];
+    }
+    
+    // Put key-value pair
+    public void put(int key, int value) {
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            int entry = table[slot] - 1;
+            values[entry] = value;
+            moveToHead(entry);
+            return;
+        }
+        
+        int entry;
+        if (size < capacity) {
+            // Entries are kept dense: indices 0..size-1 are always in use
+            entry = size++;
+        } else {
+            // Reuse the least recently used entry's arrays
+            entry = tail;
+            deleteSlot(findSlot(keys[entry]));
+            unlink(entry);
+        }
+        
+        keys[entry] = key;
+        values[entry] = value;
+        insertSlot(key, entry);
+        linkFirst(entry);
+    }
+    
+    // Remove a key from cache
+    public boolean remove(int key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return false;
+        }
+        int entry = table[slot] - 1;
+        deleteSlot(slot);
+        unlink(entry);
+        
+        // Move the last entry into the hole to keep entries dense
+        int last = --size;
+        if (entry != last) {
+            keys[entry] = keys[last];
+            values[entry] = values[last];
+            table[findSlot(keys[last])] = entry + 1;
+            prev[entry] = prev[last];
+            next[entry] = next[last];
+            if (prev[entry] != NIL) {
+                next[prev[entry]] = entry;
+            } else {
+                head = entry;
+            }
+            if (next[entry] != NIL) {
+                prev[next[entry]] = entry;
+            } else {
+                tail = entry;
+            }
+        }
+        return true;
+    }
+    
+    // Check if key exists
+    public boolean containsKey(int key) {
+        return findSlot(key) >= 0;
+    }
+    
+    // Get current size
+    public int size() {
+        return size;
+    }
+    
+    // Get capacity
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // Check if cache is empty
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    // Check if cache is full
+    public boolean isFull() {
+        return size == capacity;
+    }
+    
+    // Clear all entries
+    public void clear() {
+        Arrays.fill(table, 0);
+        head = NIL;
+        tail = NIL;
+        size = 0;
+    }
+    
+    // Display current cache state
+    public void displayCache() {
+        if (size == 0) {
+            System.out.println("Cache is empty");
+            return;
+        }
+        
+        System.out.print("Cache (MRU -> LRU): ");
+        for (int entry = head; entry != NIL; entry = next[entry]) {
+            System.out.print("(" + keys[entry] + ":" + values[entry] + ") ");
+        }
+        System.out.println(" | Size: " + size + "/" + capacity);
+    }
+    
+    // Index slot holding the key, or -1
+    private int findSlot(int key) {
+        int slot = hash(key) & tableMask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (keys[entry - 1] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+    
+    private void insertSlot(int key, int entry) {
+        int slot = hash(key) & tableMask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        table[slot] = entry + 1;
+    }
+    
+    // Linear-probing delete: shift later members of the probe chain back into the gap
+    private void deleteSlot(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & tableMask;
+            int entry = table[slot];
+            if (entry == 0) {
+                break;
+            }
+            int home = hash(keys[entry - 1]) & tableMask;
+            boolean movable = (slot > gap)
+                    ? (home <= gap || home > slot)
+                    : (home <= gap && home > slot);
+            if (movable) {
+                table[gap] = entry;
+                gap = slot;
+            }
+        }
+        table[gap] = 0;
+    }
+    
+    private void linkFirst(int entry) {
+        prev[entry] = NIL;
+        next[entry] = head;
+        if (head != NIL) {
+            prev[head] = entry;
+        } else {
+            tail = entry;
+        }
+        head = entry;
+    }
+    
+    private void unlink(int entry) {
+        int before = prev[entry];
+        int after = next[entry];
+        if (before != NIL) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after != NIL) {
+            prev[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+    
+    private void moveToHead(int entry) {
+        if (entry != head) {
+            unlink(entry);
+            linkFirst(entry);
+        }
+    }
+    
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
+
+// Converts keys and values to and from bytes for caches that store data outside the heap
+interface Serializer<T> {
+    byte[] serialize(T value);
+    T deserialize(byte[] bytes);
+    
+    static Serializer<String> utf8() {
+        return new Serializer<String>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+            
+            @Override
+            public String deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
+
+// LRU cache that keeps keys, values, the hash index and the recency links in direct
+// (off-heap) memory. Entries occupy fixed-size slots carved out of large slabs, so the
+// heap only holds the slab handles and GC never scans cached data.
+// Slot layout: [hashNext][prev][next][hash][keyLength][valueLength][key bytes][value bytes]
+class OffHeapLRUCache<K, V> implements AutoCloseable {
+    private static final int NIL = -1;
+    private static final int HEADER_BYTES = 24;
+    private static final int HASH_NEXT = 0;
+    private static final int PREV = 4;
+    private static final int NEXT = 8;
+    private static final int HASH = 12;
+    private static final int KEY_LENGTH = 16;
+    private static final int VALUE_LENGTH = 20;
+    private static final int MAX_SLAB_BYTES = 1 << 30;
+    
+    private final int capacity;
+    private final int slotSize;
+    private final int slotsPerSlab;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private ByteBuffer[] slabs;
+    private ByteBuffer buckets; // slot + 1 per bucket, 0 marks an empty bucket
+    private final int bucketMask;
+    private int head = NIL;
+    private int tail = NIL;
+    private int size;
+    private int freeList = NIL;
+    private int nextUnused;
+    
+    // Constructor: capacity entries, each at most maxEntryBytes of serialized key + value
+    public OffHeapLRUCache(int capacity, int maxEntryBytes,
+                           Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        if (capacity <= 0 || capacity > (1 << 29)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^29");
+        }
+        if (maxEntryBytes <= 0 || maxEntryBytes > MAX_SLAB_BYTES - HEADER_BYTES) {
+            throw new IllegalArgumentException("Invalid maximum entry size: " + maxEntryBytes);
+        }
+        
+        this.capacity = capacity;
+        this.slotSize = HEADER_BYTES + maxEntryBytes;
+        this.slotsPerSlab = MAX_SLAB_BYTES / slotSize;
+        this.keySerializer = Objects.requireNonNull(keySerializer, "keySerializer");
+        this.valueSerializer = Objects.requireNonNull(valueSerializer, "valueSerializer");
+        
+        int slabCount = (capacity + slotsPerSlab - 1) / slotsPerSlab;
+        this.slabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            int slots = Math.min(slotsPerSlab, capacity - i * slotsPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(slots * slotSize);
+        }
+        
+        int bucketCount = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buckets = ByteBuffer.allocateDirect(bucketCount * 4);
+        this.bucketMask = bucketCount - 1;
+    }
+    
+    // Get value by key
+    public V get(K key) {
+        ensureOpen();
+        byte[] keyBytes = keySerializer.serialize(key);
+        int slot = findSlot(keyBytes, hash(keyBytes));
+        if (slot == NIL) {
+            return null;
+        }
+        moveToHead(slot);
+        
+        ByteBuffer slab = slab(slot);
+        int base = offset(slot);
+        byte[] valueBytes = new byte[slab.getInt(base + VALUE_LENGTH)];
+        int valueStart = base + HEADER_BYTES + slab.getInt(base + KEY_LENGTH);
+        copyFromSlab(slab, valueStart, valueBytes);
+        return valueSerializer.deserialize(valueBytes);
+    }
+    
+    // Put key-value pair
+    public void put(K key, V value) {
+        ensureOpen();
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = valueSerializer.serialize(value);
+        if (keyBytes.length + valueBytes.length > slotSize - HEADER_BYTES) {
+            throw new IllegalArgumentException("Entry of " + (keyBytes.length + valueBytes.length)
+                    + " bytes exceeds slot size of " + (slotSize - HEADER_BYTES));
+        }
+        
+        int hash = hash(keyBytes);
+        int slot = findSlot(keyBytes, hash);
+        if (slot != NIL) {
+            // Same key bytes, only the value region is rewritten
+            writeValue(slot, keyBytes.length, valueBytes);
+            moveToHead(slot);
+            return;
+        }
+        
+        if (size >= capacity) {
+            // Remove least recently used (tail slot)
+            int victim = tail;
+            unlinkFromBucket(victim);
+            unlink(victim);
+            releaseSlot(victim);
+            size--;
+        }
+        
+        slot = allocateSlot();
+        ByteBuffer slab = slab(slot);
+        int base = offset(slot);
+        slab.putInt(base + HASH, hash);
+        slab.putInt(base + KEY_LENGTH, keyBytes.length);
+        copyToSlab(slab, base + HEADER_BYTES, keyBytes);
+        writeValue(slot, keyBytes.length, valueBytes);
+        
+        int bucket = hash & bucketMask;
+        slab.putInt(base + HASH_NEXT, buckets.getInt(bucket * 4) - 1);
+        buckets.putInt(bucket * 4, slot + 1);
+        linkFirst(slot);
+        size++;
+    }
+    
+    // Remove a key from cache
+    public boolean remove(K key) {
+        ensureOpen();
+        byte[] keyBytes = keySerializer.serialize(key);
+        int slot = findSlot(keyBytes, hash(keyBytes));
+        if (slot == NIL) {
+            return false;
+        }
+        unlinkFromBucket(slot);
+        unlink(slot);
+        releaseSlot(slot);
+        size--;
+        return true;
+    }
+    
+    // Check if key exists
+    public boolean containsKey(K key) {
+        ensureOpen();
+        byte[] keyBytes = keySerializer.serialize(key);
+        return findSlot(keyBytes, hash(keyBytes)) != NIL;
+    }
+    
+    // Get current size
+    public int size() {
+        return size;
+    }
+    
+    // Get capacity
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // Total bytes reserved outside the heap
+    public long getOffHeapBytes() {
+        return (long) capacity * slotSize + buckets.capacity();
+    }
+    
+    // Check if cache is empty
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    // Clear all entries (memory stays reserved)
+    public void clear() {
+        ensureOpen();
+        for (int i = 0; i < buckets.capacity(); i += 4) {
+            buckets.putInt(i, 0);
+        }
+        head = NIL;
+        tail = NIL;
+        size = 0;
+        freeList = NIL;
+        nextUnused = 0;
+    }
+    
+    // Release the off-heap memory; the cache cannot be used afterwards
+    @Override
+    public void close() {
+        if (slabs == null) {
+            return;
+        }
+        for (ByteBuffer slab : slabs) {
+            DirectMemory.free(slab);
+        }
+        DirectMemory.free(buckets);
+        slabs = null;
+        buckets = null;
+        size = 0;
+    }
+    
+    // Get cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== Off-Heap Cache Statistics ===");
+        System.out.println("Capacity: " + capacity);
+        System.out.println("Current Size: " + size);
+        System.out.println("Slot Size: " + slotSize + " bytes");
+        System.out.println("Slabs: " + (slabs == null ? 0 : slabs.length));
+        System.out.println("Off-Heap Memory: " + (slabs == null ? 0 : getOffHeapBytes()) + " bytes");
+    }
+    
+    private void ensureOpen() {
+        if (slabs == null) {
+            throw new IllegalStateException("Cache is closed");
+        }
+    }
+    
+    private ByteBuffer slab(int slot) {
+        return slabs[slot / slotsPerSlab];
+    }
+    
+    private int offset(int slot) {
+        return (slot % slotsPerSlab) * slotSize;
+    }
+    
+    private int getLink(int slot, int field) {
+        return slab(slot).getInt(offset(slot) + field);
+    }
+    
+    private void setLink(int slot, int field, int value) {
+        slab(slot).putInt(offset(slot) + field, value);
+    }
+    
+    private void writeValue(int slot, int keyLength, byte[] valueBytes) {
+        ByteBuffer slab = slab(slot);
+        int base = offset(slot);
+        slab.putInt(base + VALUE_LENGTH, valueBytes.length);
+        int valueStart = base + HEADER_BYTES + keyLength;
+        copyToSlab(slab, valueStart, valueBytes);
+    }
+    
+    // Walk the bucket chain comparing hash, length and then the key bytes
+    private int findSlot(byte[] keyBytes, int hash) {
+        int slot = buckets.getInt((hash & bucketMask) * 4) - 1;
+        while (slot != NIL) {
+            ByteBuffer slab = slab(slot);
+            int base = offset(slot);
+            if (slab.getInt(base + HASH) == hash
+                    && slab.getInt(base + KEY_LENGTH) == keyBytes.length
+                    && keyEquals(slab, base + HEADER_BYTES, keyBytes)) {
+                return slot;
+            }
+            slot = slab.getInt(base + HASH_NEXT);
+        }
+        return NIL;
+    }
+    
+    private static boolean keyEquals(ByteBuffer slab, int start, byte[] keyBytes) {
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (slab.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Bulk copies through a duplicate, so the shared slab's position is never moved (Java 8 has
+    // no absolute bulk get/put)
+    private static void copyFromSlab(ByteBuffer slab, int index, byte[] dst) {
+        ByteBuffer view = slab.duplicate();
+        view.position(index);
+        view.get(dst);
+    }
+    
+    private static void copyToSlab(ByteBuffer slab, int index, byte[] src) {
+        ByteBuffer view = slab.duplicate();
+        view.position(index);
+        view.put(src);
+    }
+    
+    private void unlinkFromBucket(int slot) {
+        int bucketOffset = (getLink(slot, HASH) & bucketMask) * 4;
+        int current = buckets.getInt(bucketOffset) - 1;
+        int chainNext = getLink(slot, HASH_NEXT);
+        if (current == slot) {
+            buckets.putInt(bucketOffset, chainNext + 1);
+            return;
+        }
+        while (current != NIL) {
+            int following = getLink(current, HASH_NEXT);
+            if (following == slot) {
+                setLink(current, HASH_NEXT, chainNext);
+                return;
+            }
+            current = following;
+        }
+    }
+    
+    private int allocateSlot() {
+        if (freeList != NIL) {
+            int slot = freeList;
+            freeList = getLink(slot, NEXT);
+            return slot;
+        }
+        return nextUnused++;
+    }
+    
+    private void releaseSlot(int slot) {
+        setLink(slot, NEXT, freeList);
+        freeList = slot;
+    }
+    
+    private void linkFirst(int slot) {
+        setLink(slot, PREV, NIL);
+        setLink(slot, NEXT, head);
+        if (head != NIL) {
+            setLink(head, PREV, slot);
+        } else {
+            tail = slot;
+        }
+        head = slot;
+    }
+    
+    private void unlink(int slot) {
+        int before = getLink(slot, PREV);
+        int after = getLink(slot, NEXT);
+        if (before != NIL) {
+            setLink(before, NEXT, after);
+        } else {
+            head = after;
+        }
+        if (after != NIL) {
+            setLink(after, PREV, before);
+        } else {
+            tail = before;
+        }
+    }
+    
+    private void moveToHead(int slot) {
+        if (slot != head) {
+            unlink(slot);
+            linkFirst(slot);
+        }
+    }
+    
+    // FNV-1a over the serialized key
+    private static int hash(byte[] bytes) {
+        int h = 0x811c9dc5;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
+
+// Eagerly frees direct buffers through the JDK's cleaner instead of waiting for GC.
+// Falls back to leaving the buffer to the garbage collector if the hook is unavailable.
+final class DirectMemory {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+    
+    private DirectMemory() {}
+    
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Leave it to the garbage collector
+        }
+    }
+}
+
+// Two-tier cache: an on-heap LRUCache (L1) in front of a file-backed DiskStore (L2).
+// Callers never touch L2 for writes. Every change L2 needs is recorded as a pending
+// operation per key: a spill (the value evicted from L1) or a tombstone (the key was
+// promoted, overwritten or removed, so any L2 copy is stale). A background writer applies
+// the pending operations one key at a time, so eviction and puts never wait on disk I/O
+// or compaction. A spill is dropped when maxPendingSpills operations are already waiting
+// (L2 is only a cache); tombstones are never dropped. Reads check L1, then pending
+// operations, then L2 (outside the cache lock), and promote L2 hits back into L1. Each key
+// lives in exactly one tier.
+class TieredLRUCache<K, V> implements AutoCloseable {
+    private static final Object REMOVED = new Object();
+    
+    private final LRUCache<K, V> l1;
+    private final DiskStore<K, V> l2;
+    private final int maxPendingSpills;
+    // Latest L2 operation per key: a value to write or REMOVED. An entry stays visible
+    // until it has been applied, so readers never fall through to a stale L2 copy.
+    private final ConcurrentHashMap<K, Object> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<Boolean> wakeUp = new ArrayBlockingQueue<>(1);
+    // Serializes appliers (the writer and flush()), so one key's operations reach L2 in order
+    private final ReentrantLock applyLock = new ReentrantLock();
+    // Bumped after each L2 change and before its pending entry is retired, so a reader that
+    // saw no pending entry can tell whether L2 changed under its unlocked read
+    private final AtomicLong appliedOperations = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder spills = new LongAdder();
+    private final LongAdder droppedSpills = new LongAdder();
+    
+    // Constructor: l1Capacity entries on heap, up to l2MaximumBytes of segment files in directory
+    public TieredLRUCache(int l1Capacity, Path directory, long l2MaximumBytes,
+                          Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        this(new LRUCache<>(l1Capacity),
+             new DiskStore<>(directory, DiskStore.DEFAULT_SEGMENT_BYTES, l2MaximumBytes, keySerializer, valueSerializer),
+             4096);
+    }
+    
+    // A listener already set on l1 keeps receiving every callback; spilling is chained after it
+    public TieredLRUCache(LRUCache<K, V> l1, DiskStore<K, V> l2, int maxPendingSpills) {
+        if (maxPendingSpills <= 0) {
+            throw new IllegalArgumentException("Maximum pending spills must be positive");
+        }
+        this.l1 = Objects.requireNonNull(l1, "l1");
+        this.l2 = Objects.requireNonNull(l2, "l2");
+        this.maxPendingSpills = maxPendingSpills;
+        l1.setListener(new SpillingListener(l1.getListener()));
+        
+        this.writer = new Thread(this::runWriter, "tiered-cache-spill-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    // Get value by key, promoting L2 hits into L1. L2 is read without holding this cache's
+    // lock, so a miss that goes to disk never holds up L1 reads and writes.
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        ensureOpen();
+        while (true) {
+            long appliedBefore;
+            synchronized (this) {
+                V value = l1.get(key);
+                if (value != null) {
+                    l1Hits.increment();
+                    return value;
+                }
+                Object operation = pending.get(key);
+                if (operation != null) {
+                    return promote(key, (operation == REMOVED) ? null : (V) operation);
+                }
+                appliedBefore = appliedOperations.get();
+            }
+            
+            V value = l2.get(key);
+            synchronized (this) {
+                // Anything that changed the key meanwhile shows up in L1, in pending, or as an applied operation
+                if (l1.containsKey(key)) {
+                    l1Hits.increment();
+                    return l1.get(key);
+                }
+                Object operation = pending.get(key);
+                if (operation != null) {
+                    return promote(key, (operation == REMOVED) ? null : (V) operation);
+                }
+                if (appliedOperations.get() == appliedBefore) {
+                    return promote(key, value);
+                }
+            }
+            // The writer changed L2 while it was being read; read it again
+        }
+    }
+    
+    // Put key-value pair into L1, discarding any older copy in L2
+    public synchronized void put(K key, V value) {
+        ensureOpen();
+        Objects.requireNonNull(value, "value");
+        l1.put(key, value);
+        dropFromL2(key);
+    }
+    
+    // Remove a key from both tiers
+    public synchronized boolean remove(K key) {
+        ensureOpen();
+        boolean removed = l1.containsKey(key);
+        l1.remove(key);
+        return dropFromL2(key) || removed;
+    }
+    
+    // Check if key exists in either tier
+    public synchronized boolean containsKey(K key) {
+        if (l1.containsKey(key)) {
+            return true;
+        }
+        Object operation = pending.get(key);
+        return (operation == null) ? l2.containsKey(key) : operation != REMOVED;
+    }
+    
+    // Entries on heap
+    public synchronized int l1Size() {
+        return l1.size();
+    }
+    
+    // Entries on disk (pending spills are not counted yet)
+    public int l2Size() {
+        return l2.size();
+    }
+    
+    // Apply all pending operations on the calling thread
+    public void flush() throws IOException {
+        writePending();
+    }
+    
+    // Stop the writer and delete the L2 segment files
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pending.clear();
+        l2.close();
+    }
+    
+    // Get cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== Tiered Cache Statistics ===");
+        System.out.println("L1 Size: " + l1Size() + "/" + l1.getCapacity());
+        System.out.println("L2 Size: " + l2Size() + " entries in " + l2.segmentCount()
+                + " segments (" + l2.diskBytes() + " bytes)");
+        System.out.println("L1 Hits: " + l1Hits.sum() + ", L2 Hits: " + l2Hits.sum() + ", Misses: " + misses.sum());
+        System.out.println("Spills: " + spills.sum() + " (dropped: " + droppedSpills.sum()
+                + "), Compactions: " + l2.compactions());
+    }
+    
+    // Forwards every callback to the listener l1 had, and spills evicted entries
+    private final class SpillingListener implements CacheListener<K, V> {
+        private final CacheListener<K, V> delegate;
+        
+        SpillingListener(CacheListener<K, V> delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void onHit(LRUCache<K, V> cache, K key, V value) {
+            delegate.onHit(cache, key, value);
+        }
+        
+        @Override
+        public void onMiss(LRUCache<K, V> cache, K key) {
+            delegate.onMiss(cache, key);
+        }
+        
+        @Override
+        public void onPut(LRUCache<K, V> cache, K key, V value, boolean updated) {
+            delegate.onPut(cache, key, value, updated);
+        }
+        
+        @Override
+        public void onEvict(LRUCache<K, V> cache, K key, V value) {
+            delegate.onEvict(cache, key, value);
+            spill(key, value);
+        }
+        
+        @Override
+        public void onExpire(LRUCache<K, V> cache, K key, V value) {
+            delegate.onExpire(cache, key, value);
+        }
+        
+        @Override
+        public void onRefresh(LRUCache<K, V> cache, K key, V value) {
+            delegate.onRefresh(cache, key, value);
+        }
+        
+        @Override
+        public void onRemove(LRUCache<K, V> cache, K key, boolean found) {
+            delegate.onRemove(cache, key, found);
+        }
+        
+        @Override
+        public void onClear(LRUCache<K, V> cache) {
+            delegate.onClear(cache);
+        }
+    }
+    
+    // Called from L1 eviction: must never block
+    private void spill(K key, V value) {
+        if (closed) {
+            return;
+        }
+        // A key that already has a pending operation is replaced in place, so it never grows the map
+        if (pending.size() >= maxPendingSpills && !pending.containsKey(key)) {
+            droppedSpills.increment();
+            return;
+        }
+        pending.put(key, value);
+        spills.increment();
+        wakeUp.offer(Boolean.TRUE);
+    }
+    
+    // Make sure L2 will not serve the key, returning whether it held a copy. Pending
+    // operations are checked before L2: one that is applied in between is still seen.
+    private boolean dropFromL2(K key) {
+        Object operation = pending.get(key);
+        if (operation == REMOVED) {
+            return false;
+        }
+        if (operation != null || l2.containsKey(key)) {
+            pending.put(key, REMOVED);
+            wakeUp.offer(Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+    
+    // Move an L2 or pending value into L1; called with this held
+    private V promote(K key, V value) {
+        if (value == null) {
+            misses.increment();
+            return null;
+        }
+        l2Hits.increment();
+        l1.put(key, value);
+        dropFromL2(key);
+        return value;
+    }
+    
+    private void runWriter() {
+        while (!closed) {
+            try {
+                wakeUp.take();
+                writePending();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // A failed spill only loses cached data; keep serving from L1
+                System.err.println("Spill to L2 failed: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void writePending() throws IOException {
+        for (K key : pending.keySet()) {
+            if (closed) {
+                return;
+            }
+            apply(key);
+        }
+        l2.maybeCompact();
+    }
+    
+    // Apply the latest operation of a key; it is retired only if no newer one replaced it
+    @SuppressWarnings("unchecked")
+    private void apply(K key) throws IOException {
+        applyLock.lock();
+        try {
+            Object operation = pending.get(key);
+            if (operation == null) {
+                return;
+            }
+            if (operation == REMOVED) {
+                l2.remove(key);
+            } else {
+                l2.put(key, (V) operation);
+            }
+            appliedOperations.incrementAndGet();
+            pending.remove(key, operation);
+        } finally {
+            applyLock.unlock();
+        }
+    }
+    
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cache is closed");
+        }
+    }
+}
+
+// Log-structured key-value store used as the second cache tier. Records are appended to
+// fixed-size segment files and found through an in-memory index; overwrites and removals
+// only leave garbage behind. Sealed segments that are mostly garbage are compacted by
+// copying their live records forward, and when the store exceeds its byte bound the
+// oldest segment is dropped whole. The files are scratch space and are deleted on close.
+// Record layout: [keyLength][valueLength][key bytes][value bytes]
+class DiskStore<K, V> implements AutoCloseable {
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    
+    // Where a live value sits on disk
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int recordLength;
+        final int keyLength;
+        final int valueLength;
+        
+        Location(int segment, long offset, int keyLength, int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.recordLength = RECORD_HEADER_BYTES + keyLength + valueLength;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+    }
+    
+    private static final class Segment {
+        final int id;
+        final Path file;
+        final FileChannel channel;
+        long length;
+        long liveBytes;
+        
+        Segment(int id, Path file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+    
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maximumBytes;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    // Concurrent so containsKey() and size() never wait behind an append or compaction
+    private final Map<K, Location> index = new ConcurrentHashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private int nextSegmentId;
+    private long diskBytes;
+    private long compactions;
+    private boolean closed;
+    
+    // Constructor: segment files of segmentBytes each, at most maximumBytes in total
+    public DiskStore(Path directory, long segmentBytes, long maximumBytes,
+                     Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        if (segmentBytes <= 0 || maximumBytes < 2 * segmentBytes) {
+            throw new IllegalArgumentException("Maximum bytes must hold at least two segments");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.maximumBytes = maximumBytes;
+        this.keySerializer = Objects.requireNonNull(keySerializer, "keySerializer");
+        this.valueSerializer = Objects.requireNonNull(valueSerializer, "valueSerializer");
+        roll();
+    }
+    
+    // Get value by key
+    public synchronized V get(K key) {
+        ensureOpen();
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(location.valueLength);
+        try {
+            readFully(segments.get(location.segment).channel, buffer,
+                    location.offset + RECORD_HEADER_BYTES + location.keyLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return valueSerializer.deserialize(buffer.array());
+    }
+    
+    // Append key-value pair, superseding any older record of the key
+    public synchronized void put(K key, V value) throws IOException {
+        ensureOpen();
+        append(key, keySerializer.serialize(key), valueSerializer.serialize(value));
+    }
+    
+    // Remove a key (its record becomes garbage)
+    public synchronized boolean remove(K key) {
+        Location location = index.remove(key);
+        if (location == null) {
+            return false;
+        }
+        segments.get(location.segment).liveBytes -= location.recordLength;
+        return true;
+    }
+    
+    // Check if key exists, without locking
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+    
+    // Get current size, without locking
+    public int size() {
+        return index.size();
+    }
+    
+    // Number of segment files
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+    
+    // Bytes currently occupied on disk, garbage included
+    public synchronized long diskBytes() {
+        return diskBytes;
+    }
+    
+    // Number of segments rewritten by compaction
+    public synchronized long compactions() {
+        return compactions;
+    }
+    
+    // Compact every sealed segment whose live data has fallen below the threshold
+    public synchronized void maybeCompact() throws IOException {
+        ensureOpen();
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment != active && segments.containsKey(segment.id)
+                    && segment.liveBytes < segment.length * COMPACTION_THRESHOLD) {
+                compact(segment);
+            }
+        }
+    }
+    
+    // Close and delete all segment files
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        }
+        segments.clear();
+        index.clear();
+    }
+    
+    private void append(K key, byte[] keyBytes, byte[] valueBytes) throws IOException {
+        int recordLength = RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length;
+        if (recordLength > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + recordLength
+                    + " bytes exceeds segment size of " + segmentBytes);
+        }
+        if (active.length + recordLength > segmentBytes) {
+            roll();
+        }
+        
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes).flip();
+        long offset = active.length;
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.length += recordLength;
+        active.liveBytes += recordLength;
+        diskBytes += recordLength;
+        
+        Location previous = index.put(key, new Location(active.id, offset, keyBytes.length, valueBytes.length));
+        if (previous != null) {
+            segments.get(previous.segment).liveBytes -= previous.recordLength;
+        }
+    }
+    
+    // Seal the active segment and start a new one, dropping the oldest segments if over the bound
+    private void roll() throws IOException {
+        while (diskBytes + segmentBytes > maximumBytes && !segments.isEmpty()) {
+            dropSegment(segments.firstEntry().getValue());
+        }
+        int id = nextSegmentId++;
+        Path file = directory.resolve(String.format("segment-%08d.dat", id));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = new Segment(id, file, channel);
+        segments.put(id, active);
+    }
+    
+    // Copy the live records of a sealed segment to the active one and delete it
+    private void compact(Segment segment) throws IOException {
+        if (segment.liveBytes > 0) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            long offset = 0;
+            // Appends may roll and drop the oldest segment, which can be this one
+            while (offset < segment.length && segments.containsKey(segment.id)) {
+                header.clear();
+                readFully(segment.channel, header, offset);
+                int keyLength = header.getInt(0);
+                int valueLength = header.getInt(4);
+                ByteBuffer body = ByteBuffer.allocate(keyLength + valueLength);
+                readFully(segment.channel, body, offset + RECORD_HEADER_BYTES);
+                
+                byte[] keyBytes = Arrays.copyOfRange(body.array(), 0, keyLength);
+                K key = keySerializer.deserialize(keyBytes);
+                Location location = index.get(key);
+                if (location != null && location.segment == segment.id && location.offset == offset) {
+                    append(key, keyBytes, Arrays.copyOfRange(body.array(), keyLength, body.capacity()));
+                }
+                offset += RECORD_HEADER_BYTES + keyLength + valueLength;
+            }
+        }
+        if (segments.containsKey(segment.id)) {
+            deleteSegment(segment);
+        }
+        compactions++;
+    }
+    
+    // Evict a whole segment, forgetting every key whose live record is in it
+    private void dropSegment(Segment segment) throws IOException {
+        if (segment.liveBytes > 0) {
+            index.values().removeIf(location -> location.segment == segment.id);
+        }
+        deleteSegment(segment);
+    }
+    
+    private void deleteSegment(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        diskBytes -= segment.length;
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated segment file");
+            }
+        }
+    }
+    
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+}
+
+// Invalidation message: keys changed by one near-cache instance
+final class InvalidationBatch<K> {
+    private final String sourceId;
+    private final List<K> keys;
+    
+    InvalidationBatch(String sourceId, List<K> keys) {
+        this.sourceId = sourceId;
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+    }
+    
+    public String getSourceId() {
+        return sourceId;
+    }
+    
+    public List<K> getKeys() {
+        return keys;
+    }
+}
+
+// Carries invalidation batches between near-cache instances (a message bus across JVMs)
+interface InvalidationTransport<K> {
+    void publish(InvalidationBatch<K> batch);
+    void subscribe(Consumer<InvalidationBatch<K>> subscriber);
+    void unsubscribe(Consumer<InvalidationBatch<K>> subscriber);
+}
+
+// In-process transport standing in for a real bus in demos and tests. Every published
+// batch is delivered to all subscribers on the executor, like messages arriving off the wire.
+class InProcessInvalidationTransport<K> implements InvalidationTransport<K> {
+    private final List<Consumer<InvalidationBatch<K>>> subscribers = new CopyOnWriteArrayList<>();
+    private final Executor executor;
+    
+    public InProcessInvalidationTransport(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+    
+    @Override
+    public void publish(InvalidationBatch<K> batch) {
+        for (Consumer<InvalidationBatch<K>> subscriber : subscribers) {
+            executor.execute(() -> subscriber.accept(batch));
+        }
+    }
+    
+    @Override
+    public void subscribe(Consumer<InvalidationBatch<K>> subscriber) {
+        subscribers.add(Objects.requireNonNull(subscriber, "subscriber"));
+    }
+    
+    @Override
+    public void unsubscribe(Consumer<InvalidationBatch<K>> subscriber) {
+        subscribers.remove(subscriber);
+    }
+}
+
+// Local LRUCache of shared reference data kept coherent across instances. A write through
+// one instance invalidates the key everywhere else: outgoing keys are buffered and
+// published in batches (when batchSize keys are pending or every maxDelay), and incoming
+// batches are applied under a single lock acquisition.
+// Each applied invalidation gets a sequence number. A loader takes a stamp before reading
+// the system of record and its result is only cached if no invalidation of that key has
+// been applied since, so a slow load of the old value can never land after the
+// invalidation that superseded it.
+class NearCache<K, V> implements AutoCloseable {
+    private static final int DEFAULT_TOMBSTONES = 10_000;
+    
+    private final String instanceId = UUID.randomUUID().toString();
+    private final LRUCache<K, V> cache;
+    private final InvalidationTransport<K> transport;
+    private final Consumer<InvalidationBatch<K>> subscriber = this::applyRemote;
+    private final int batchSize;
+    private final ScheduledExecutorService flusher;
+    
+    // Guarded by this: invalidation sequence and the most recent invalidation of each key
+    private long sequence;
+    private long forgottenSequence;
+    private final LinkedHashMap<K, Long> tombstones;
+    
+    private final Object outgoingLock = new Object();
+    private List<K> outgoing = new ArrayList<>();
+    
+    private final LongAdder rejectedPuts = new LongAdder();
+    private final LongAdder remoteInvalidations = new LongAdder();
+    private final LongAdder publishedBatches = new LongAdder();
+    
+    // Constructor
+    public NearCache(int capacity, InvalidationTransport<K> transport, int batchSize, long maxDelay, TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.cache = new LRUCache<>(capacity);
+        this.transport = Objects.requireNonNull(transport, "transport");
+        this.batchSize = batchSize;
+        this.tombstones = new LinkedHashMap<K, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                if (size() <= DEFAULT_TOMBSTONES) {
+                    return false;
+                }
+                // Forgotten keys fall back to the newest sequence dropped, which is conservative
+                forgottenSequence = Math.max(forgottenSequence, eldest.getValue());
+                return true;
+            }
+        };
+        
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "near-cache-invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushInvalidations, maxDelay, maxDelay, unit);
+        transport.subscribe(subscriber);
+    }
+    
+    // Get value by key
+    public synchronized V get(K key) {
+        return cache.get(key);
+    }
+    
+    // Get value by key, loading and caching it on a miss unless invalidated meanwhile
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long stamp;
+        synchronized (this) {
+            V value = cache.get(key);
+            if (value != null) {
+                return value;
+            }
+            stamp = sequence;
+        }
+        V value = loader.apply(key);
+        if (value != null) {
+            putIfCurrent(key, value, stamp);
+        }
+        return value;
+    }
+    
+    // Stamp to pass to putIfCurrent() for a value read from the system of record now
+    public synchronized long stamp() {
+        return sequence;
+    }
+    
+    // Cache a value read at the given stamp; rejected if the key was invalidated since
+    public synchronized boolean putIfCurrent(K key, V value, long stamp) {
+        Long invalidated = tombstones.get(key);
+        long lastInvalidation = (invalidated != null) ? invalidated : forgottenSequence;
+        if (lastInvalidation > stamp) {
+            rejectedPuts.increment();
+            return false;
+        }
+        cache.put(key, value);
+        return true;
+    }
+    
+    // Record a new value written by this instance and invalidate the key on all others
+    public void put(K key, V value) {
+        synchronized (this) {
+            invalidateLocally(key);
+            cache.put(key, value);
+        }
+        enqueue(key);
+    }
+    
+    // Drop a key here and on all other instances
+    public void invalidate(K key) {
+        synchronized (this) {
+            invalidateLocally(key);
+        }
+        enqueue(key);
+    }
+    
+    // Publish pending invalidations now
+    public void flushInvalidations() {
+        List<K> batch;
+        synchronized (outgoingLock) {
+            if (outgoing.isEmpty()) {
+                return;
+            }
+            batch = outgoing;
+            outgoing = new ArrayList<>();
+        }
+        transport.publish(new InvalidationBatch<>(instanceId, batch));
+        publishedBatches.increment();
+    }
+    
+    // Check if key exists
+    public synchronized boolean containsKey(K key) {
+        return cache.containsKey(key);
+    }
+    
+    // Get current size
+    public synchronized int size() {
+        return cache.size();
+    }
+    
+    // Publish what is pending and stop listening
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+        flushInvalidations();
+        transport.unsubscribe(subscriber);
+    }
+    
+    // Get near-cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== Near Cache Statistics ===");
+        System.out.println("Instance: " + instanceId.substring(0, 8) + ", Size: " + size());
+        System.out.println("Published Batches: " + publishedBatches.sum()
+                + ", Remote Invalidations Applied: " + remoteInvalidations.sum());
+        System.out.println("Stale Puts Rejected: " + rejectedPuts.sum());
+    }
+    
+    private void enqueue(K key) {
+        boolean full;
+        synchronized (outgoingLock) {
+            outgoing.add(key);
+            full = outgoing.size() >= batchSize;
+        }
+        if (full) {
+            flushInvalidations();
+        }
+    }
+    
+    // Called with this held
+    private void invalidateLocally(K key) {
+        sequence++;
+        tombstones.remove(key);
+        tombstones.put(key, sequence);
+        cache.remove(key);
+    }
+    
+    private void applyRemote(InvalidationBatch<K> batch) {
+        if (batch.getSourceId().equals(instanceId)) {
+            return;
+        }
+        synchronized (this) {
+            for (K key : batch.getKeys()) {
+                invalidateLocally(key);
+            }
+        }
+        remoteInvalidations.add(batch.getKeys().size());
+    }
+}
+
+// Why an entry left the cache
+enum RemovalCause {
+    EXPLICIT,  // removed or invalidated by the caller
+    CLEARED,   // dropped by clear(); only the local copy is gone
+    REPLACED,  // value overwritten by a put
+    EXPIRED,   // time-to-live or idle timeout reached
+    SIZE;      // evicted to stay within capacity or maximum weight
+    
+    public boolean wasEvicted() {
+        return this == EXPIRED || this == SIZE;
+    }
+}
+
+// An entry that left a cache, with the reason it left
+final class RemovalNotification<K, V> {
+    private final K key;
+    private final V value;
+    private final RemovalCause cause;
+    
+    RemovalNotification(K key, V value, RemovalCause cause) {
+        this.key = key;
+        this.value = value;
+        this.cause = cause;
+    }
+    
+    public K getKey() {
+        return key;
+    }
+    
+    public V getValue() {
+        return value;
+    }
+    
+    public RemovalCause getCause() {
+        return cause;
+    }
+    
+    public boolean wasEvicted() {
+        return cause.wasEvicted();
+    }
+    
+    @Override
+    public String toString() {
+        return key + "=" + value + " [" + cause + "]";
+    }
+}
+
+// Receives removed entries asynchronously, one batch at a time, in removal order
+@FunctionalInterface
+interface RemovalListener<K, V> {
+    void onRemoval(K key, V value, RemovalCause cause);
+    
+    default void onRemovals(List<RemovalNotification<K, V>> batch) {
+        for (RemovalNotification<K, V> notification : batch) {
+            onRemoval(notification.getKey(), notification.getValue(), notification.getCause());
+        }
+    }
+}
+
+// Synchronous write-through hook, called on the caller's thread inside the cache operation.
+// write() runs before a put takes effect and delete() before an explicit removal, so a
+// failure propagates to the caller and leaves the cache unchanged. Evictions have no
+// caller to report to: their delete() failures are logged and the eviction proceeds.
+// Only remove() and invalidateAll() report EXPLICIT deletes; clear() drops local copies
+// without calling delete().
+interface CacheWriter<K, V> {
+    void write(K key, V value);
+    void delete(K key, V value, RemovalCause cause);
+}
+
+// Delivers removal notifications off the writer's hot path. Notifications go into a
+// bounded queue and a single drain task on the executor hands them to the listener in
+// batches, so delivery is serial and ordered. When the queue is full the publishing
+// thread delivers a batch itself: memory stays bounded and nothing is dropped.
+final class RemovalDispatcher<K, V> {
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final int BATCH_SIZE = 64;
+    
+    private final RemovalListener<K, V> listener;
+    private final Executor executor;
+    private final BlockingQueue<RemovalNotification<K, V>> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    
+    RemovalDispatcher(RemovalListener<K, V> listener, Executor executor, int queueCapacity) {
+        this.listener = Objects.requireNonNull(listener, "listener");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+    
+    void publish(K key, V value, RemovalCause cause) {
+        RemovalNotification<K, V> notification = new RemovalNotification<>(key, value, cause);
+        while (!queue.offer(notification)) {
+            drainLock.lock();
+            try {
+                deliverBatch();
+            } finally {
+                drainLock.unlock();
+            }
+        }
+        schedule();
+    }
+    
+    // Deliver everything published so far on the calling thread
+    void flush() {
+        drainLock.lock();
+        try {
+            while (deliverBatch() > 0) {
+                // keep delivering
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+    
+    private void schedule() {
+        if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            flush();
+        }
+    }
+    
+    private void drain() {
+        try {
+            flush();
+        } finally {
+            scheduled.set(false);
+        }
+        // Pick up anything published while the flag was still set
+        schedule();
+    }
+    
+    private int deliverBatch() {
+        List<RemovalNotification<K, V>> batch = new ArrayList<>(BATCH_SIZE);
+        queue.drainTo(batch, BATCH_SIZE);
+        if (!batch.isEmpty()) {
+            try {
+                listener.onRemovals(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Removal listener failed: " + e);
+            }
+        }
+        return batch.size();
+    }
+}
+
+// Slow system of record behind a cache; calls receive whole batches
+interface BackingStore<K, V> {
+    void writeAll(Map<K, V> entries);
+    void deleteAll(Collection<K> keys);
+}
+
+// Thread-safe in-memory BackingStore for demos and tests, with optional per-batch latency
+class InMemoryBackingStore<K, V> implements BackingStore<K, V> {
+    private final ConcurrentHashMap<K, V> data = new ConcurrentHashMap<>();
+    private final long batchLatencyMillis;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong deletes = new AtomicLong();
+    
+    public InMemoryBackingStore() {
+        this(0);
+    }
+    
+    public InMemoryBackingStore(long batchLatencyMillis) {
+        this.batchLatencyMillis = batchLatencyMillis;
+    }
+    
+    @Override
+    public void writeAll(Map<K, V> entries) {
+        simulateLatency();
+        data.putAll(entries);
+        batches.incrementAndGet();
+        writes.addAndGet(entries.size());
+    }
+    
+    @Override
+    public void deleteAll(Collection<K> keys) {
+        simulateLatency();
+        for (K key : keys) {
+            data.remove(key);
+        }
+        batches.incrementAndGet();
+        deletes.addAndGet(keys.size());
+    }
+    
+    public V get(K key) {
+        return data.get(key);
+    }
+    
+    public int size() {
+        return data.size();
+    }
+    
+    public long getBatchCount() {
+        return batches.get();
+    }
+    
+    public long getWriteCount() {
+        return writes.get();
+    }
+    
+    public long getDeleteCount() {
+        return deletes.get();
+    }
+    
+    private void simulateLatency() {
+        if (batchLatencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchLatencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+// Write-behind CacheWriter: puts and explicit removals only mark the key dirty, and a
+// background flusher writes dirty keys to the BackingStore in batches once batchSize keys
+// are dirty or the oldest has waited maxDelay. Repeated updates to a key coalesce into one
+// store write of the latest value. An entry evicted while dirty is written out before the
+// eviction completes, so the store never lags behind what the cache has dropped.
+// flush() returns only when everything dirty at the time of the call is in the store, and
+// close() stops the flusher and flushes. Failed batches stay dirty and are retried.
+// Clearing the cache leaves the store alone: cleared keys are not deleted, and any that
+// were still dirty are written out as usual.
+// Install with LRUCache.setCacheWriter().
+class WriteBehindWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
+    private static final Object DELETED = new Object();
+    private static final long MAX_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long FAILURE_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    
+    private final BackingStore<K, V> store;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    
+    // Dirty keys in the order they first became dirty, mapped to a value or DELETED
+    private final LinkedHashMap<K, Object> dirty = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private long oldestDirtyNanos;
+    // After a failed batch neither trigger fires before this deadline; the backoff doubles per failure
+    private long retryNotBeforeNanos;
+    private long retryBackoffNanos;
+    
+    // Flusher thread only: failures are logged at most once per FAILURE_LOG_INTERVAL_NANOS
+    private long lastFailureLogNanos;
+    private long unloggedFailures;
+    
+    // Serializes store calls, so writes of one key reach the store in order
+    private final ReentrantLock storeLock = new ReentrantLock();
+    private final Thread flusher;
+    private volatile boolean closed;
+    
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushedEntries = new LongAdder();
+    private final LongAdder evictionFlushes = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    
+    // Constructor
+    public WriteBehindWriter(BackingStore<K, V> store, int batchSize, long maxDelay, TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (maxDelay <= 0) {
+            throw new IllegalArgumentException("Maximum delay must be positive");
+        }
+        this.store = Objects.requireNonNull(store, "store");
+        this.batchSize = batchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        
+        this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    @Override
+    public void write(K key, V value) {
+        markDirty(key, value);
+    }
+    
+    @Override
+    public void delete(K key, V value, RemovalCause cause) {
+        if (cause == RemovalCause.EXPLICIT) {
+            markDirty(key, DELETED);
+        } else if (cause.wasEvicted()) {
+            flushKey(key);
+        }
+    }
+    
+    // Write every dirty entry to the store before returning
+    public void flush() {
+        storeLock.lock();
+        try {
+            Map<K, Object> batch;
+            while (!(batch = takeBatch(Integer.MAX_VALUE)).isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+    
+    // Stop the background flusher and flush what is still dirty
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        lock.lock();
+        try {
+            flushNeeded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+    
+    // Number of keys waiting to be written
+    public int dirtyCount() {
+        lock.lock();
+        try {
+            return dirty.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Get write-behind statistics
+    public void displayStatistics() {
+        System.out.println("\n=== Write-Behind Statistics ===");
+        System.out.println("Dirty Entries: " + dirtyCount());
+        System.out.println("Flushed Entries: " + flushedEntries.sum() + " (coalesced away: " + coalesced.sum() + ")");
+        System.out.println("Flushed On Eviction: " + evictionFlushes.sum());
+        System.out.println("Failed Batches: " + failedBatches.sum());
+    }
+    
+    private void markDirty(K key, Object value) {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        lock.lock();
+        try {
+            if (dirty.isEmpty()) {
+                oldestDirtyNanos = System.nanoTime();
+            }
+            if (dirty.put(key, value) != null) {
+                coalesced.increment();
+            }
+            if (dirty.size() >= batchSize) {
+                flushNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Synchronously write one dirty key, waiting out any batch that holds the store
+    private void flushKey(K key) {
+        storeLock.lock();
+        try {
+            Object value;
+            lock.lock();
+            try {
+                value = dirty.remove(key);
+            } finally {
+                lock.unlock();
+            }
+            if (value != null) {
+                writeBatch(Collections.singletonMap(key, value));
+                evictionFlushes.increment();
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+    
+    private void runFlusher() {
+        while (!closed) {
+            lock.lock();
+            try {
+                while (!closed && (isBackingOff() || !isBatchDue())) {
+                    long waitNanos = isBackingOff() ? retryNotBeforeNanos - System.nanoTime()
+                            : dirty.isEmpty() ? maxDelayNanos : oldestDirtyNanos + maxDelayNanos - System.nanoTime();
+                    flushNeeded.awaitNanos(waitNanos);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (closed) {
+                return;
+            }
+            
+            storeLock.lock();
+            try {
+                writeBatch(takeBatch(batchSize));
+                lock.lock();
+                try {
+                    retryBackoffNanos = 0;
+                } finally {
+                    lock.unlock();
+                }
+            } catch (RuntimeException e) {
+                // The batch is dirty again; hold off both triggers so a store that is down is not hammered
+                lock.lock();
+                try {
+                    retryBackoffNanos = (retryBackoffNanos == 0) ? maxDelayNanos
+                            : Math.min(retryBackoffNanos * 2, Math.max(maxDelayNanos, MAX_RETRY_BACKOFF_NANOS));
+                    retryNotBeforeNanos = System.nanoTime() + retryBackoffNanos;
+                } finally {
+                    lock.unlock();
+                }
+                logFailure(e);
+            } finally {
+                storeLock.unlock();
+            }
+        }
+    }
+    
+    // Called with lock held
+    private boolean isBackingOff() {
+        return retryBackoffNanos > 0 && System.nanoTime() - retryNotBeforeNanos < 0;
+    }
+    
+    private void logFailure(RuntimeException e) {
+        long now = System.nanoTime();
+        if (lastFailureLogNanos != 0 && now - lastFailureLogNanos < FAILURE_LOG_INTERVAL_NANOS) {
+            unloggedFailures++;
+            return;
+        }
+        String suppressed = (unloggedFailures > 0) ? " (" + unloggedFailures + " more failures not logged)" : "";
+        System.err.println("Write-behind flush failed, retrying in "
+                + TimeUnit.NANOSECONDS.toMillis(retryBackoffNanos) + " ms: " + e + suppressed);
+        lastFailureLogNanos = now;
+        unloggedFailures = 0;
+    }
+    
+    // Called with lock held
+    private boolean isBatchDue() {
+        return dirty.size() >= batchSize
+                || (!dirty.isEmpty() && System.nanoTime() - oldestDirtyNanos >= maxDelayNanos);
+    }
+    
+    // Remove up to limit of the oldest dirty entries
+    private Map<K, Object> takeBatch(int limit) {
+        lock.lock();
+        try {
+            Map<K, Object> batch = new LinkedHashMap<>();
+            Iterator<Map.Entry<K, Object>> iterator = dirty.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < limit) {
+                Map.Entry<K, Object> entry = iterator.next();
+                batch.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+            oldestDirtyNanos = System.nanoTime();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Called with storeLock held. On failure, entries not re-dirtied in the meantime are restored.
+    @SuppressWarnings("unchecked")
+    private void writeBatch(Map<K, Object> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<K, V> writes = new LinkedHashMap<>();
+        List<K> deletes = new ArrayList<>();
+        for (Map.Entry<K, Object> entry : batch.entrySet()) {
+            if (entry.getValue() == DELETED) {
+                deletes.add(entry.getKey());
+            } else {
+                writes.put(entry.getKey(), (V) entry.getValue());
+            }
+        }
+        
+        try {
+            if (!writes.isEmpty()) {
+                store.writeAll(writes);
+            }
+            if (!deletes.isEmpty()) {
+                store.deleteAll(deletes);
+            }
+            flushedEntries.add(batch.size());
+        } catch (RuntimeException | Error e) {
+            failedBatches.increment();
+            lock.lock();
+            try {
+                for (Map.Entry<K, Object> entry : batch.entrySet()) {
+                    dirty.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+}
+
+// Lock-free cache counters. LongAdder spreads contended increments over per-thread
+// cells, so recording on the hot path never serializes readers.
+class StatsCounter {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder[] evictions = new LongAdder[RemovalCause.values().length];
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+    
+    public StatsCounter() {
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = new LongAdder();
+        }
+    }
+    
+    public void recordHit() {
+        hits.increment();
+    }
+    
+    public void recordMiss() {
+        misses.increment();
+    }
+    
+    public void recordPut() {
+        puts.increment();
+    }
+    
+    // Batch operations record their counts with a single add
+    public void recordPuts(long count) {
+        puts.add(count);
+    }
+    
+    public void recordEviction(RemovalCause cause) {
+        evictions[cause.ordinal()].increment();
+    }
+    
+    public void recordEvictions(RemovalCause cause, long count) {
+        evictions[cause.ordinal()].add(count);
+    }
+    
+    public void recordLoadSuccess(long loadNanos) {
+        loadSuccesses.increment();
+        totalLoadTime.add(loadNanos);
+    }
+    
+    public void recordLoadFailure(long loadNanos) {
+        loadFailures.increment();
+        totalLoadTime.add(loadNanos);
+    }
+    
+    public void recordGetLatency(long nanos) {
+        getLatency.record(nanos);
+    }
+    
+    public void recordPutLatency(long nanos) {
+        putLatency.record(nanos);
+    }
+    
+    // Point-in-time copy; counters keep running so consecutive snapshots can be diffed
+    public CacheStats snapshot() {
+        long[] evictionCounts = new long[evictions.length];
+        for (int i = 0; i < evictions.length; i++) {
+            evictionCounts[i] = evictions[i].sum();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), evictionCounts,
+                loadSuccesses.sum(), loadFailures.sum(), totalLoadTime.sum(),
+                getLatency.snapshot(), putLatency.snapshot());
+    }
+}
+
+// HDR-style latency histogram: values are bucketed by power of two with 16 linear
+// sub-buckets each, giving ~6% relative precision from 1ns up to Long.MAX_VALUE in
+// 976 striped counters.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    private final LongAdder[] counts = new LongAdder[BUCKET_COUNT];
+    
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+    
+    public void record(long nanos) {
+        counts[indexOf(Math.max(0L, nanos))].increment();
+    }
+    
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts[i].sum();
+        }
+        return new Snapshot(copy);
+    }
+    
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    // Largest value that maps to the bucket
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowest = (1L << magnitude) | (subBucket << (magnitude - SUB_BUCKET_BITS));
+        long width = 1L << (magnitude - SUB_BUCKET_BITS);
+        return (lowest + width - 1 < 0) ? Long.MAX_VALUE : lowest + width - 1;
+    }
+    
+    // Immutable bucket counts
+    static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            this.totalCount = total;
+        }
+        
+        public long count() {
+            return totalCount;
+        }
+        
+        // Value at the given percentile (0-100), reported as the bucket's upper bound
+        public long percentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueAt(i);
+                }
+            }
+            return highestValueAt(counts.length - 1);
+        }
+        
+        public Snapshot minus(Snapshot other) {
+            long[] delta = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = Math.max(0, counts[i] - other.counts[i]);
+            }
+            return new Snapshot(delta);
+        }
+    }
+}
+
+// Immutable snapshot of cache statistics
+class CacheStats {
+    private static final CacheStats EMPTY = new StatsCounter().snapshot();
+    
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long[] evictionCounts;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final LatencyHistogram.Snapshot getLatency;
+    private final LatencyHistogram.Snapshot putLatency;
+    
+    public CacheStats(long hitCount, long missCount, long putCount, long[] evictionCounts,
+                      long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+                      LatencyHistogram.Snapshot getLatency, LatencyHistogram.Snapshot putLatency) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCounts = evictionCounts.clone();
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.getLatency = getLatency;
+        this.putLatency = putLatency;
+    }
+    
+    // Snapshots are immutable, so caches that do not record stats share one
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+    
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+    
+    public double hitRate() {
+        long requests = requestCount();
+        return (requests == 0) ? 1.0 : (double) hitCount / requests;
+    }
+    
+    public double missRate() {
+        long requests = requestCount();
+        return (requests == 0) ? 0.0 : (double) missCount / requests;
+    }
+    
+    public long evictionCount() {
+        return evictionCounts[RemovalCause.SIZE.ordinal()] + evictionCounts[RemovalCause.EXPIRED.ordinal()];
+    }
+    
+    public long evictionCount(RemovalCause cause) {
+        return evictionCounts[cause.ordinal()];
+    }
+    
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return (loads == 0) ? 0.0 : (double) totalLoadTime / loads;
+    }
+    
+    // Difference between this snapshot and an earlier one
+    public CacheStats minus(CacheStats other) {
+        long[] evictionDelta = new long[evictionCounts.length];
+        for (int i = 0; i < evictionCounts.length; i++) {
+            evictionDelta[i] = Math.max(0, evictionCounts[i] - other.evictionCounts[i]);
+        }
+        return new CacheStats(
+                Math.max(0, hitCount - other.hitCount),
+                Math.max(0, missCount - other.missCount),
+                Math.max(0, putCount - other.putCount),
+                evictionDelta,
+                Math.max(0, loadSuccessCount - other.loadSuccessCount),
+                Math.max(0, loadFailureCount - other.loadFailureCount),
+                Math.max(0, totalLoadTime - other.totalLoadTime),
+                getLatency.minus(other.getLatency),
+                putLatency.minus(other.putLatency));
+    }
+    
+    // Getters
+    public long hitCount() { return hitCount; }
+    public long missCount() { return missCount; }
+    public long putCount() { return putCount; }
+    public long loadSuccessCount() { return loadSuccessCount; }
+    public long loadFailureCount() { return loadFailureCount; }
+    public long totalLoadTime() { return totalLoadTime; }
+    public LatencyHistogram.Snapshot getLatency() { return getLatency; }
+    public LatencyHistogram.Snapshot putLatency() { return putLatency; }
+    
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount
+                + ", hitRate=" + String.format("%.2f", hitRate() * 100) + "%"
+                + ", puts=" + putCount
+                + ", evictions(size)=" + evictionCount(RemovalCause.SIZE)
+                + ", evictions(expired)=" + evictionCount(RemovalCause.EXPIRED)
+                + ", loads=" + (loadSuccessCount + loadFailureCount)
+                + ", loadFailures=" + loadFailureCount
+                + ", get p50/p99=" + getLatency.percentile(50) + "/" + getLatency.percentile(99) + "ns"
+                + ", put p50/p99=" + putLatency.percentile(50) + "/" + putLatency.percentile(99) + "ns}";
+    }
+}
+
+// Sequential reader over a memory-mapped file that remaps its window as it advances,
+// so files larger than one mapping (2 GB) can still be read
+class MappedRegion {
+    private static final long WINDOW_BYTES = Integer.MAX_VALUE;
+    
+    private final FileChannel channel;
+    private final long fileSize;
+    private long windowStart;
+    private MappedByteBuffer window;
+    
+    MappedRegion(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        map(0);
+    }
+    
+    int readInt() throws IOException {
+        ensure(Integer.BYTES);
+        return window.getInt();
+    }
+    
+    byte[] readBytes(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupt snapshot: negative length");
+        }
+        // Bounds first: a corrupt length must fail as EOF, not as a huge allocation
+        ensure(length);
+        byte[] bytes = new byte[length];
+        window.get(bytes);
+        return bytes;
+    }
+    
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long position = windowStart + window.position();
+        if (position + bytes > fileSize) {
+            throw new EOFException("Snapshot truncated at byte " + position);
+        }
+        map(position);
+    }
+    
+    private void map(long position) throws IOException {
+        long length = Math.min(WINDOW_BYTES, fileSize - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+    }
+}
+
+// Computes the relative size of an entry for weight-bounded caches
+@FunctionalInterface
+interface Weigher<K, V> {
+    int weigh(K key, V value);
+}
+
+// Eviction policies supported by LRUCache
+enum EvictionPolicy {
+    LRU,             // evict the least recently used entry
+    WINDOW_TINY_LFU  // small LRU admission window + frequency-filtered segmented LRU
+}
+
+// Count-Min Sketch of 4-bit counters used by W-TinyLFU to estimate access frequency.
+// Counters are halved once the sample size is reached so old popularity fades out.
+class FrequencySketch {
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+    
+    public FrequencySketch(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 8) - 1) << 1;
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * Math.max(capacity, 8);
+    }
+    
+    // Estimated number of occurrences of the element (0 to 15)
+    public int frequency(Object element) {
+        int hash = spread(Objects.hashCode(element));
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+    
+    // Count one occurrence, aging all counters when the sample period ends
+    public void increment(Object element) {
+        int hash = spread(Objects.hashCode(element));
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+    
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+    
+    // Halve every counter
+    private void reset() {
+        int oddCounters = 0;
+        for (int i = 0; i < table.length; i++) {
+            oddCounters += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (oddCounters >>> 2);
+    }
+    
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+    
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
+
+// Resizes an LRUCache within [minCapacity, maxCapacity] according to heap pressure.
+// Heap pools get a collection-usage threshold at highWatermark of their maximum, so the
+// JVM notifies us when live data after a GC crosses it; GC notifications additionally
+// report heap occupancy after every collection. Above highWatermark the cache shrinks by
+// a quarter (at most once per second, as one GC can raise both notifications), below
+// lowWatermark it grows by a tenth. Only setCapacity() is called here, from JMX
+// notification threads, so the cache applies the change on its own thread.
+class MemoryPressureController implements AutoCloseable {
+    private static final double SHRINK_FACTOR = 0.75;
+    private static final double GROW_FACTOR = 1.10;
+    private static final long SHRINK_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final LRUCache<?, ?> cache;
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final double lowWatermark;
+    private final double highWatermark;
+    private final NotificationListener listener = this::handleNotification;
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final List<MemoryPoolMXBean> thresholdPools = new ArrayList<>();
+    private final AtomicLong shrinks = new AtomicLong();
+    private final AtomicLong grows = new AtomicLong();
+    private long lastShrinkNanos;
+    
+    // Constructor: watermarks are fractions of the maximum heap, e.g. 0.6 and 0.85
+    public MemoryPressureController(LRUCache<?, ?> cache, int minCapacity, int maxCapacity,
+                                    double lowWatermark, double highWatermark) {
+        if (minCapacity <= 0 || maxCapacity < minCapacity) {
+            throw new IllegalArgumentException("Invalid capacity bounds: " + minCapacity + ".." + maxCapacity);
+        }
+        if (!(0 < lowWatermark && lowWatermark < highWatermark && highWatermark < 1)) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 < low < high < 1");
+        }
+        this.cache = Objects.requireNonNull(cache, "cache");
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+    
+    // Arm the heap pool thresholds and subscribe to memory and GC notifications
+    public synchronized void start() {
+        if (!emitters.isEmpty()) {
+            return;
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * highWatermark));
+                thresholdPools.add(pool);
+            }
+        }
+        subscribe(ManagementFactory.getMemoryMXBean());
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            subscribe(collector);
+        }
+    }
+    
+    // Disarm thresholds and unsubscribe
+    @Override
+    public synchronized void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // already gone
+            }
+        }
+        emitters.clear();
+        for (MemoryPoolMXBean pool : thresholdPools) {
+            pool.setCollectionUsageThreshold(0);
+        }
+        thresholdPools.clear();
+    }
+    
+    // Apply the resize policy to a heap occupancy reading
+    public synchronized void onHeapUsage(long used, long max) {
+        if (max <= 0) {
+            return;
+        }
+        double occupancy = (double) used / max;
+        int current = cache.getCapacity();
+        if (occupancy > highWatermark) {
+            long now = System.nanoTime();
+            if (current > minCapacity && (shrinks.get() == 0 || now - lastShrinkNanos >= SHRINK_COOLDOWN_NANOS)) {
+                cache.setCapacity(Math.max(minCapacity, (int) (current * SHRINK_FACTOR)));
+                shrinks.incrementAndGet();
+                lastShrinkNanos = now;
+            }
+        } else if (occupancy < lowWatermark && current < maxCapacity) {
+            cache.setCapacity((int) Math.min(maxCapacity, Math.max(current + 1L, (long) (current * GROW_FACTOR))));
+            grows.incrementAndGet();
+        }
+    }
+    
+    public long getShrinkCount() {
+        return shrinks.get();
+    }
+    
+    public long getGrowCount() {
+        return grows.get();
+    }
+    
+    private void subscribe(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            NotificationEmitter emitter = (NotificationEmitter) bean;
+            emitter.addNotificationListener(listener, null, null);
+            emitters.add(emitter);
+        }
+    }
+    
+    private void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (type.equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+            MemoryUsage usage = MemoryNotificationInfo.from((CompositeData) notification.getUserData()).getUsage();
+            onHeapUsage(usage.getUsed(), usage.getMax());
+        } else if (type.equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage after = info.getGcInfo().getMemoryUsageAfterGc().get(pool.getName());
+                if (pool.getType() == MemoryType.HEAP && after != null) {
+                    used += after.getUsed();
+                }
+            }
+            onHeapUsage(used, Runtime.getRuntime().maxMemory());
+        }
+    }
+}
+
+// Source of monotonic time in nanoseconds, replaceable so expiry can be driven by hand
+interface Ticker {
+    long read();
+    
+    static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+}
+
+// Ticker that only moves when told to (demos and deterministic tests)
+class ManualTicker implements Ticker {
+    private final AtomicLong nanos = new AtomicLong();
+    
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+    
+    public void advance(long duration, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+}
+
+// Thread-safe LRU Cache that splits the key space into independently locked segments.
+// Each segment keeps its own map and recency list, so LRU order is exact per segment
+// and approximate across the whole cache.
+// In buffered-read mode a hit only records the node in a striped ring buffer; the
+// recency list is updated later in batches by whichever thread holds the segment lock.
+class ConcurrentLRUCache<K, V> {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    
+    private final int capacity;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final boolean bufferedReads;
+    private volatile StatsCounter statsCounter;
+    
+    // Constructor
+    public ConcurrentLRUCache(int capacity) {
+        this(capacity, DEFAULT_CONCURRENCY_LEVEL);
+    }
+    
+    public ConcurrentLRUCache(int capacity, int concurrencyLevel) {
+        this(capacity, concurrencyLevel, false);
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLRUCache(int capacity, int concurrencyLevel, boolean bufferedReads) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Concurrency level must be positive");
+        }
+        
+        // Power-of-two segment count, never more segments than entries
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount * 2 <= capacity) {
+            segmentCount <<= 1;
+        }
+        
+        this.capacity = capacity;
+        this.bufferedReads = bufferedReads;
+        this.segmentMask = segmentCount - 1;
+        this.segments = (Segment<K, V>[]) new Segment[segmentCount];
+        
+        // Spread capacity evenly, giving the remainder to the first segments
+        int perSegment = capacity / segmentCount;
+        int remainder = capacity % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(perSegment + (i < remainder ? 1 : 0), bufferedReads);
+        }
+    }
+    
+    // Get value by key
+    public V get(K key) {
+        StatsCounter stats = statsCounter;
+        if (stats == null) {
+            return segmentFor(key).get(key);
+        }
+        long start = System.nanoTime();
+        V value = segmentFor(key).get(key);
+        stats.recordGetLatency(System.nanoTime() - start);
+        if (value != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return value;
+    }
+    
+    // Get value by key without recording a hit or miss, for re-checks within one request
+    public V getQuietly(K key) {
+        return segmentFor(key).get(key);
+    }
+    
+    // Put key-value pair
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        StatsCounter stats = statsCounter;
+        if (stats == null) {
+            segmentFor(key).put(key, value);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean evicted = segmentFor(key).put(key, value);
+        stats.recordPutLatency(System.nanoTime() - start);
+        stats.recordPut();
+        if (evicted) {
+            stats.recordEviction(RemovalCause.SIZE);
+        }
+    }
+    
+    // Remove a key from cache
+    public boolean remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+    
+    // Get values for many keys, locking each touched segment once; absent keys are left out
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        List<List<K>> batches = partition(keys, key -> key);
+        Map<K, V> found = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            if (batches.get(i) != null) {
+                segments[i].getAll(batches.get(i), found);
+            }
+        }
+        
+        // Preserve the caller's key order
+        StatsCounter stats = statsCounter;
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+            if (stats != null) {
+                if (value != null) {
+                    stats.recordHit();
+                } else {
+                    stats.recordMiss();
+                }
+            }
+        }
+        return result;
+    }
+    
+    // Put many key-value pairs, locking each touched segment once and evicting once per segment
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        List<List<Map.Entry<? extends K, ? extends V>>> batches = partition(entries.entrySet(), entry -> {
+            Objects.requireNonNull(entry.getValue(), "value");
+            return entry.getKey();
+        });
+        int evicted = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (batches.get(i) != null) {
+                evicted += segments[i].putAll(batches.get(i));
+            }
+        }
+        
+        StatsCounter stats = statsCounter;
+        if (stats != null) {
+            stats.recordPuts(entries.size());
+            stats.recordEvictions(RemovalCause.SIZE, evicted);
+        }
+    }
+    
+    // Remove many keys, locking each touched segment once; returns how many were present
+    public int invalidateAll(Collection<? extends K> keys) {
+        List<List<K>> batches = partition(keys, key -> key);
+        int removed = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (batches.get(i) != null) {
+                removed += segments[i].removeAll(batches.get(i));
+            }
+        }
+        return removed;
+    }
+    
+    // Check if key exists
+    public boolean containsKey(K key) {
+        return segmentFor(key).containsKey(key);
+    }
+    
+    // Get current size (sum of segment sizes, may be slightly stale under concurrent writes)
+    public int size() {
+        int total = 0;
+        for (Segment<K, V> segment : segments) {
+            total += segment.size;
+        }
+        return total;
+    }
+    
+    // Get capacity
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // Get number of segments
+    public int getSegmentCount() {
+        return segments.length;
+    }
+    
+    // Check if reads are recorded through the access buffers
+    public boolean isBufferedReads() {
+        return bufferedReads;
+    }
+    
+    // Check if cache is empty
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    // Clear all entries
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+    
+    // Start recording hit/miss/eviction counts and get/put latencies
+    public synchronized void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+    
+    // Snapshot of the statistics (all zero unless recordStats() was called)
+    public CacheStats stats() {
+        StatsCounter stats = statsCounter;
+        return (stats == null) ? CacheStats.empty() : stats.snapshot();
+    }
+    
+    // Counter shared with wrappers that record loads (null when stats are off)
+    StatsCounter statsCounter() {
+        return statsCounter;
+    }
+    
+    // Replay all pending buffered reads against the recency lists
+    public void cleanUp() {
+        for (Segment<K, V> segment : segments) {
+            segment.cleanUp();
+        }
+    }
+    
+    // Get cache statistics
+    public void displayStatistics() {
+        System.out.println("\n=== Concurrent Cache Statistics ===");
+        System.out.println("Capacity: " + capacity);
+        System.out.println("Segments: " + segments.length);
+        System.out.println("Buffered Reads: " + bufferedReads);
+        int size = size();
+        System.out.println("Current Size: " + size);
+        System.out.println("Load Factor: " + String.format("%.2f", (double) size / capacity * 100) + "%");
+        if (statsCounter != null) {
+            System.out.println(stats());
+        }
+    }
+    
+    // Pick the segment owning a key
+    private Segment<K, V> segmentFor(K key) {
+        return segments[segmentIndex(key)];
+    }
+    
+    private int segmentIndex(K key) {
+        Objects.requireNonNull(key, "key");
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & segmentMask;
+    }
+    
+    // Group a batch by owning segment (null for segments the batch does not touch)
+    private <E> List<List<E>> partition(Collection<? extends E> elements, Function<? super E, ? extends K> keyOf) {
+        List<List<E>> batches = new ArrayList<>(Collections.nCopies(segments.length, null));
+        for (E element : elements) {
+            int index = segmentIndex(keyOf.apply(element));
+            List<E> batch = batches.get(index);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.set(index, batch);
+            }
+            batch.add(element);
+        }
+        return batches;
+    }
+    
+    // One independently locked slice of the cache with its own recency list
+    private static final class Segment<K, V> {
+        private static final class Node<K, V> {
+            final K key;
+            volatile V value;
+            Node<K, V> prev;
+            Node<K, V> next;
+            
+            Node(K key, V value) {
+                this.key = key;
+                this.value = value;
+            }
+        }
+        
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final Map<K, Node<K, V>> cache;
+        private final Node<K, V> head;
+        private final Node<K, V> tail;
+        private final ReadBuffer<Node<K, V>> readBuffer;
+        private volatile int size;
+        
+        Segment(int capacity, boolean bufferedReads) {
+            this.capacity = capacity;
+            this.cache = new ConcurrentHashMap<>();
+            this.readBuffer = bufferedReads ? new ReadBuffer<>() : null;
+            this.head = new Node<>(null, null);
+            this.tail = new Node<>(null, null);
+            head.next = tail;
+            tail.prev = head;
+        }
+        
+        V get(K key) {
+            if (readBuffer != null) {
+                return getBuffered(key);
+            }
+            
+            lock.lock();
+            try {
+                Node<K, V> node = cache.get(key);
+                if (node == null) {
+                    return null;
+                }
+                moveToHead(node);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Lock-free hit: record the access and only drain when a buffer fills up
+        private V getBuffered(K key) {
+            Node<K, V> node = cache.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (readBuffer.offer(node) == ReadBuffer.FULL && lock.tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node.value;
+        }
+        
+        // Returns true if an entry had to be evicted to make room
+        boolean put(K key, V value) {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                
+                Node<K, V> existingNode = cache.get(key);
+                if (existingNode != null) {
+                    existingNode.value = value;
+                    moveToHead(existingNode);
+                    return false;
+                }
+                
+                boolean evicted = false;
+                if (size >= capacity) {
+                    Node<K, V> tailNode = tail.prev;
+                    unlink(tailNode);
+                    cache.remove(tailNode.key);
+                    size--;
+                    evicted = true;
+                }
+                
+                Node<K, V> newNode = new Node<>(key, value);
+                cache.put(key, newNode);
+                addToHead(newNode);
+                size++;
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        boolean remove(K key) {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                
+                Node<K, V> node = cache.remove(key);
+                if (node == null) {
+                    return false;
+                }
+                unlink(node);
+                size--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        void getAll(List<K> keys, Map<K, V> found) {
+            if (readBuffer != null) {
+                for (K key : keys) {
+                    V value = getBuffered(key);
+                    if (value != null) {
+                        found.put(key, value);
+                    }
+                }
+                return;
+            }
+            
+            lock.lock();
+            try {
+                for (K key : keys) {
+                    Node<K, V> node = cache.get(key);
+                    if (node != null) {
+                        moveToHead(node);
+                        found.put(key, node.value);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Link the whole batch, then trim the tail once; returns the number of evictions
+        int putAll(List<Map.Entry<? extends K, ? extends V>> entries) {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                
+                for (Map.Entry<? extends K, ? extends V> entry : entries) {
+                    Node<K, V> existingNode = cache.get(entry.getKey());
+                    if (existingNode != null) {
+                        existingNode.value = entry.getValue();
+                        moveToHead(existingNode);
+                        continue;
+                    }
+                    Node<K, V> newNode = new Node<>(entry.getKey(), entry.getValue());
+                    cache.put(entry.getKey(), newNode);
+                    addToHead(newNode);
+                    size++;
+                }
+                
+                int evicted = 0;
+                while (size > capacity) {
+                    Node<K, V> tailNode = tail.prev;
+                    unlink(tailNode);
+                    cache.remove(tailNode.key);
+                    size--;
+                    evicted++;
+                }
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        int removeAll(List<K> keys) {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                
+                int removed = 0;
+                for (K key : keys) {
+                    Node<K, V> node = cache.remove(key);
+                    if (node != null) {
+                        unlink(node);
+                        size--;
+                        removed++;
+                    }
+                }
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        boolean containsKey(K key) {
+            return cache.containsKey(key);
+        }
+        
+        void clear() {
+            lock.lock();
+            try {
+                drainReadBuffer();
+                
+                Node<K, V> current = head.next;
+                while (current != tail) {
+                    Node<K, V> next = current.next;
+                    current.prev = null;
+                    current.next = null;
+                    current = next;
+                }
+                cache.clear();
+                head.next = tail;
+                tail.prev = head;
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        void cleanUp() {
+            if (readBuffer == null) {
+                return;
+            }
+            lock.lock();
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Replay recorded reads; nodes unlinked since they were recorded are skipped
+        private void drainReadBuffer() {
+            if (readBuffer == null) {
+                return;
+            }
+            readBuffer.drainTo(node -> {
+                if (node.prev != null) {
+                    moveToHead(node);
+                }
+            });
+        }
+        
+        private void addToHead(Node<K, V> node) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+        }
+        
+        private void removeNode(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+        }
+        
+        // Remove node from the list for good, marking it dead for pending buffered reads
+        private void unlink(Node<K, V> node) {
+            removeNode(node);
+            node.prev = null;
+            node.next = null;
+        }
+        
+        private void moveToHead(Node<K, V> node) {
+            removeNode(node);
+            addToHead(node);
+        }
+    }
+}
+
+// Cache that loads missing values itself. Concurrent misses for the same key coalesce
+// into a single in-flight load whose result every waiter shares; failed loads are
+// reported to all waiters and nothing is cached.
+class LoadingLRUCache<K, V> {
+    private final ConcurrentLRUCache<K, V> cache;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    
+    // Constructor
+    public LoadingLRUCache(int capacity) {
+        this(new ConcurrentLRUCache<>(capacity));
+    }
+    
+    public LoadingLRUCache(ConcurrentLRUCache<K, V> cache) {
+        this.cache = Objects.requireNonNull(cache, "cache");
+    }
+    
+    // Get value by key, loading it on a miss (null results are returned but not cached)
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = cache.get(key);
+        if (value != null) {
+            return value;
+        }
+        
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        
+        try {
+            // A load may have finished between our miss and registering the future;
+            // the miss was already recorded above
+            value = cache.getQuietly(key);
+            if (value == null) {
+                value = load(key, loader);
+                cacheIfCurrent(key, future, value);
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+    
+    // Get values for many keys; all misses not already being loaded go to one bulk call
+    public Map<K, V> getAll(Collection<? extends K> keys,
+                            Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        Map<K, V> found = new HashMap<>(cache.getAll(keys));
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> waiting = new HashMap<>();
+        
+        for (K key : keys) {
+            if (found.containsKey(key) || owned.containsKey(key) || waiting.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (existing == null) {
+                owned.put(key, future);
+            } else {
+                waiting.put(key, existing);
+            }
+        }
+        
+        if (!owned.isEmpty()) {
+            try {
+                Map<? extends K, ? extends V> loaded = loadAll(owned.keySet(), bulkLoader);
+                Map<K, V> fresh = new HashMap<>();
+                for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                    V value = (loaded == null) ? null : loaded.get(entry.getKey());
+                    if (value != null) {
+                        fresh.put(entry.getKey(), value);
+                    }
+                    // Per key rather than putAll(): each put must be atomic with its staleness check
+                    cacheIfCurrent(entry.getKey(), entry.getValue(), value);
+                }
+                found.putAll(fresh);
+                for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                    entry.getValue().complete(fresh.get(entry.getKey()));
+                }
+            } catch (RuntimeException | Error e) {
+                for (CompletableFuture<V> future : owned.values()) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        
+        for (Map.Entry<K, CompletableFuture<V>> entry : waiting.entrySet()) {
+            V value = await(entry.getValue());
+            if (value != null) {
+                found.put(entry.getKey(), value);
+            }
+        }
+        
+        // Preserve the caller's key order
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+    
+    // Get value only if cached
+    public V getIfPresent(K key) {
+        return cache.get(key);
+    }
+    
+    // Put key-value pair; a load of the key already running will not overwrite it
+    public void put(K key, V value) {
+        inFlight.remove(key);
+        cache.put(key, value);
+    }
+    
+    // Remove a key from cache; a load of the key already running will not bring it back
+    public boolean invalidate(K key) {
+        inFlight.remove(key);
+        return cache.remove(key);
+    }
+    
+    // Number of loads currently in flight
+    public int pendingLoads() {
+        return inFlight.size();
+    }
+    
+    // Underlying cache
+    public ConcurrentLRUCache<K, V> getCache() {
+        return cache;
+    }
+    
+    // Cache a loaded value only if its load is still registered. put() and invalidate()
+    // unregister running loads before changing the cache, and the check and the put happen
+    // atomically under the inFlight entry, so a slow load of the old value never lands after
+    // a newer write or an invalidation. Waiters on the load still receive its value.
+    private void cacheIfCurrent(K key, CompletableFuture<V> future, V value) {
+        inFlight.computeIfPresent(key, (k, current) -> {
+            if (current != future) {
+                return current;
+            }
+            if (value != null) {
+                cache.put(key, value);
+            }
+            return null;
+        });
+    }
+    
+    // Run a loader, recording its outcome and duration when stats are enabled
+    private V load(K key, Function<? super K, ? extends V> loader) {
+        StatsCounter stats = cache.statsCounter();
+        long start = (stats == null) ? 0L : System.nanoTime();
+        boolean succeeded = false;
+        try {
+            V value = loader.apply(key);
+            succeeded = true;
+            return value;
+        } finally {
+            recordLoad(stats, start, succeeded);
+        }
+    }
+    
+    private Map<? extends K, ? extends V> loadAll(Set<K> keys,
+            Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        StatsCounter stats = cache.statsCounter();
+        long start = (stats == null) ? 0L : System.nanoTime();
+        boolean succeeded = false;
+        try {
+            Map<? extends K, ? extends V> loaded = bulkLoader.apply(Collections.unmodifiableSet(keys));
+            succeeded = true;
+            return loaded;
+        } finally {
+            recordLoad(stats, start, succeeded);
+        }
+    }
+    
+    private static void recordLoad(StatsCounter stats, long start, boolean succeeded) {
+        if (stats == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (succeeded) {
+            stats.recordLoadSuccess(elapsed);
+        } else {
+            stats.recordLoadFailure(elapsed);
+        }
+    }
+    
+    // Wait for another caller's load, rethrowing its failure unwrapped
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
+
+// Striped, lossy ring buffer of recorded accesses.
+// Readers append with a single CAS on their stripe; a full stripe drops the event,
+// which only costs a little recency precision. Draining must be done under a lock.
+class ReadBuffer<E> {
+    static final int SUCCESS = 0;
+    static final int FULL = 1;
+    static final int FAILED = 2;
+    
+    private static final int STRIPE_COUNT = stripeCount();
+    private static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    
+    private final AtomicReferenceArray<E>[] buffers;
+    private final AtomicLong[] writeCounters;
+    private final AtomicLongArray readCounters;
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ReadBuffer() {
+        buffers = new AtomicReferenceArray[STRIPE_COUNT];
+        writeCounters = new AtomicLong[STRIPE_COUNT];
+        readCounters = new AtomicLongArray(STRIPE_COUNT);
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            buffers[i] = new AtomicReferenceArray<>(BUFFER_SIZE);
+            writeCounters[i] = new AtomicLong();
+        }
+    }
+    
+    // Record an element; returns SUCCESS, FULL (caller should drain) or FAILED (lost a race)
+    int offer(E element) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+        AtomicLong writeCounter = writeCounters[stripe];
+        long tail = writeCounter.get();
+        long size = tail - readCounters.get(stripe);
+        if (size >= BUFFER_SIZE) {
+            return FULL;
+        }
+        if (!writeCounter.compareAndSet(tail, tail + 1)) {
+            return FAILED;
+        }
+        buffers[stripe].lazySet((int) tail & BUFFER_MASK, element);
+        return (size + 1 >= BUFFER_SIZE) ? FULL : SUCCESS;
+    }
+    
+    // Hand every published element to the consumer in recording order per stripe
+    void drainTo(Consumer<E> consumer) {
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            AtomicReferenceArray<E> buffer = buffers[stripe];
+            long head = readCounters.get(stripe);
+            long tail = writeCounters[stripe].get();
+            while (head < tail) {
+                int index = (int) head & BUFFER_MASK;
+                E element = buffer.get(index);
+                if (element == null) {
+                    break; // slot claimed but not yet published
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(element);
+                head++;
+            }
+            readCounters.lazySet(stripe, head);
+        }
+    }
+    
+    private static int stripeCount() {
+        int stripes = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (stripes < cpus && stripes < 16) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
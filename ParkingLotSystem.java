@@ -3,6 +3,8 @@
 // =====================================================
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.time.LocalDateTime;
 
 // Main Class - Must be first and public
@@ -43,6 +45,131 @@ public class ParkingLotSystem {
         System.out.println("\n4. Final availability:");
         parkingLot.displayAvailability();
 
+        // Concurrent gates
+        System.out.println("\n5. Stress check: 12 gates parking and unparking at once...");
+        ParkingLot busyLot = new ParkingLot("Stadium Parking", "Uptown", true);
+        busyLot.setVerbose(false);
+        ConcurrentHashMap<Integer, Vehicle> occupants = new ConcurrentHashMap<>();
+        AtomicInteger doubleBookings = new AtomicInteger();
+        AtomicInteger parked = new AtomicInteger();
+        ExecutorService gates = Executors.newFixedThreadPool(12);
+        List<Future<?>> gateRuns = new ArrayList<>();
+        for (int g = 0; g < 12; g++) {
+            final int gate = g;
+            gateRuns.add(gates.submit(() -> {
+                // Each gate keeps up to 10 vehicles parked, so together they overfill the lot
+                Random random = new Random(gate);
+                Deque<ParkingTicket> gateTickets = new ArrayDeque<>();
+                for (int i = 0; i < 20_000; i++) {
+                    String plate = "G" + gate + "-" + i;
+                    int kind = random.nextInt(3);
+                    Vehicle vehicle = kind == 0 ? new Car(plate) : kind == 1 ? new Bike(plate) : new Truck(plate);
+                    ParkingTicket ticket = busyLot.parkVehicle(vehicle);
+                    if (ticket != null) {
+                        ParkingSpot spot = ticket.getParkingSpot();
+                        if (occupants.putIfAbsent(spot.getSpotNumber(), vehicle) != null) {
+                            doubleBookings.incrementAndGet();
+                        }
+                        parked.incrementAndGet();
+                        gateTickets.addLast(ticket);
+                    }
+                    if (ticket == null || gateTickets.size() > 10) {
+                        ParkingTicket oldest = gateTickets.pollFirst();
+                        if (oldest != null) {
+                            ParkingSpot spot = oldest.getParkingSpot();
+                            if (spot.getVehicle() != oldest.getVehicle()) {
+                                doubleBookings.incrementAndGet();
+                            }
+                            occupants.remove(spot.getSpotNumber(), oldest.getVehicle());
+                            busyLot.unparkVehicle(oldest.getTicketNumber());
+                        }
+                    }
+                }
+                while (!gateTickets.isEmpty()) {
+                    ParkingTicket ticket = gateTickets.pollFirst();
+                    occupants.remove(ticket.getParkingSpot().getSpotNumber(), ticket.getVehicle());
+                    busyLot.unparkVehicle(ticket.getTicketNumber());
+                }
+            }));
+        }
+        gates.shutdown();
+        try {
+            if (!gates.awaitTermination(1, TimeUnit.MINUTES)) {
+                gates.shutdownNow();
+                throw new IllegalStateException("Stress check: gates did not finish within a minute");
+            }
+            for (Future<?> gateRun : gateRuns) {
+                gateRun.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Stress check interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stress check: a gate failed", e.getCause());
+        }
+        System.out.println("Vehicles parked: " + parked.get() + ", double bookings: " + doubleBookings.get());
+        busyLot.displayAvailability();
+        if (doubleBookings.get() > 0) {
+            throw new IllegalStateException("Stress check: " + doubleBookings.get() + " double bookings");
+        }
+        // Every vehicle has left, so the lot must be back to 50 compact, 30 large, 20 handicapped
+        int[] expectedFree = {50, 30, 20};
+        ParkingSpotType[] spotTypes = {ParkingSpotType.COMPACT, ParkingSpotType.LARGE, ParkingSpotType.HANDICAPPED};
+        for (int i = 0; i < spotTypes.length; i++) {
+            if (busyLot.getFreeCount(spotTypes[i]) != expectedFree[i]) {
+                throw new IllegalStateException("Stress check: " + busyLot.getFreeCount(spotTypes[i]) + " free "
+                        + spotTypes[i] + " spots after all vehicles left, expected " + expectedFree[i]);
+            }
+        }
+
+        // Levels and entrances
+        System.out.println("\n6. Multi-level garage: nearest free spot to each entrance...");
+        List<ParkingLevel> garageLevels = new ArrayList<>();
+        for (int level = 1; level <= 3; level++) {
+            garageLevels.add(new ParkingLevel(level)
+                    .addSpots(ParkingSpotType.HANDICAPPED, 4)
+                    .addSpots(ParkingSpotType.COMPACT, 30)
+                    .addSpots(ParkingSpotType.LARGE, 10));
+        }
+        Entrance north = new Entrance("North", 1, 0);
+        Entrance south = new Entrance("South", 2, 43 * ParkingLevel.SPOT_WIDTH);
+        ParkingLot garage = new ParkingLot("Airport Garage", "Terminal 1", garageLevels, Arrays.asList(north, south), false);
+        garage.setVerbose(false);
+        String[][] arrivals = {{"CAR1", "North"}, {"CAR2", "North"}, {"CAR3", "South"}, {"TRK1", "South"}, {"BIK1", "North"}};
+        for (String[] arrival : arrivals) {
+            Entrance entrance = arrival[1].equals("North") ? north : south;
+            Vehicle vehicle = arrival[0].startsWith("TRK") ? new Truck(arrival[0])
+                    : arrival[0].startsWith("BIK") ? new Bike(arrival[0]) : new Car(arrival[0]);
+            ParkingSpot spot = garage.parkVehicle(vehicle, entrance).getParkingSpot();
+            System.out.println(vehicle.getLicensePlate() + " via " + entrance + " -> spot " + spot.getSpotNumber()
+                    + " (" + spot.getType() + ", " + entrance.walkingDistance(spot) + "m walk)");
+        }
+
+        // Several lots behind one facade
+        System.out.println("\n7. Lot group routing 12 cars to the least-loaded lot...");
+        ParkingLotGroup group = new ParkingLotGroup("Downtown Group");
+        for (String lotName : new String[] {"Lot A", "Lot B", "Lot C"}) {
+            ParkingLot lot = new ParkingLot(lotName, "Downtown",
+                    Collections.singletonList(new ParkingLevel(1).addSpots(ParkingSpotType.COMPACT, lotName.equals("Lot A") ? 4 : 8)),
+                    Collections.singletonList(new Entrance("Main", 1, 0)), false);
+            lot.setVerbose(false);
+            group.addLot(lot);
+        }
+        for (int i = 1; i <= 12; i++) {
+            group.parkVehicle(new Car("GRP" + i));
+        }
+        group.displayOccupancy();
+
+        // Live availability feed
+        System.out.println("\n8. Display board subscribed to the garage's availability feed...");
+        AvailabilityListener board = delta -> System.out.println("Board update: " + delta);
+        garage.subscribe(board);
+        ParkingTicket boardTicket = garage.parkVehicle(new Car("CAR4"), south);
+        garage.unparkVehicle(boardTicket.getTicketNumber());
+        garage.unsubscribe(board);
+        System.out.println("Compact spots free on level 1: " + garage.getFreeCount(1, ParkingSpotType.COMPACT));
+        garage.displayLevelAvailability();
+
         System.out.println("\n=== PARKING LOT DEMO COMPLETED ===");
     }
 }
@@ -96,25 +223,37 @@ class Truck extends Vehicle {
 class ParkingSpot {
     private int spotNumber;
     private ParkingSpotType type;
-    private boolean isFree;
-    private Vehicle vehicle;
+    private int level;
+    private int position; // meters along the level's aisle
+    private volatile boolean isFree;
+    private volatile Vehicle vehicle;
     
     public ParkingSpot(int spotNumber, ParkingSpotType type) {
+        this(spotNumber, type, 0, spotNumber);
+    }
+    
+    public ParkingSpot(int spotNumber, ParkingSpotType type, int level, int position) {
         this.spotNumber = spotNumber;
         this.type = type;
+        this.level = level;
+        this.position = position;
         this.isFree = true;
     }
     
     public boolean canFitVehicle(Vehicle vehicle) {
         if (!isFree) return false;
-        
-        switch (vehicle.getType()) {
+        return fits(vehicle.getType(), type);
+    }
+    
+    // Fit rules shared by canFitVehicle and FreeSpotIndex
+    public static boolean fits(VehicleType vehicleType, ParkingSpotType spotType) {
+        switch (vehicleType) {
             case BIKE:
                 return true; // Bike can fit anywhere
             case CAR:
-                return type == ParkingSpotType.COMPACT || type == ParkingSpotType.HANDICAPPED;
+                return spotType == ParkingSpotType.COMPACT || spotType == ParkingSpotType.HANDICAPPED;
             case TRUCK:
-                return type == ParkingSpotType.LARGE;
+                return spotType == ParkingSpotType.LARGE;
             default:
                 return false;
         }
@@ -130,15 +269,438 @@ class ParkingSpot {
         this.isFree = true;
     }
     
+    // Spot types a vehicle fits, in the order they should be tried
+    public static List<ParkingSpotType> fittingTypes(VehicleType vehicleType) {
+        List<ParkingSpotType> types = new ArrayList<>();
+        for (ParkingSpotType spotType : ParkingSpotType.values()) {
+            if (fits(vehicleType, spotType)) {
+                types.add(spotType);
+            }
+        }
+        return types;
+    }
+    
     // Getters
     public int getSpotNumber() { return spotNumber; }
     public ParkingSpotType getType() { return type; }
+    public int getLevel() { return level; }
+    public int getPosition() { return position; }
     public boolean isFree() { return isFree; }
     public Vehicle getVehicle() { return vehicle; }
 }
 
+// One floor of a lot. Spots are laid out along a single aisle SPOT_WIDTH meters apart
+// and numbered level * 1000 + n, so spot 2015 is the 15th spot on level 2.
+class ParkingLevel {
+    public static final int SPOT_WIDTH = 3;
+    
+    private int levelNumber;
+    private List<ParkingSpot> spots;
+    
+    public ParkingLevel(int levelNumber) {
+        this.levelNumber = levelNumber;
+        this.spots = new ArrayList<>();
+    }
+    
+    // Append count spots of a type to the end of the aisle
+    public ParkingLevel addSpots(ParkingSpotType type, int count) {
+        for (int i = 0; i < count; i++) {
+            int n = spots.size();
+            spots.add(new ParkingSpot(levelNumber * 1000 + n + 1, type, levelNumber, n * SPOT_WIDTH));
+        }
+        return this;
+    }
+    
+    public int getLevelNumber() { return levelNumber; }
+    public List<ParkingSpot> getSpots() { return spots; }
+}
+
+// A pedestrian entrance; spots are ranked by walking distance from it
+class Entrance {
+    public static final int LEVEL_CHANGE_DISTANCE = 60; // meters of ramp or stairs per level
+    
+    private String name;
+    private int level;
+    private int position;
+    
+    public Entrance(String name, int level, int position) {
+        this.name = name;
+        this.level = level;
+        this.position = position;
+    }
+    
+    public int walkingDistance(ParkingSpot spot) {
+        return Math.abs(spot.getPosition() - position) + LEVEL_CHANGE_DISTANCE * Math.abs(spot.getLevel() - level);
+    }
+    
+    public String getName() { return name; }
+    public int getLevel() { return level; }
+    
+    @Override
+    public String toString() { return name + " (level " + level + ")"; }
+}
+
+// Hands out free spots that fit a vehicle and takes them back
+interface SpotAllocator {
+    ParkingSpot allocate(Vehicle vehicle); // assigns the vehicle, or returns null when full
+    
+    // Allocators that do not rank spots by distance ignore the entrance
+    default ParkingSpot allocate(Vehicle vehicle, Entrance entrance) {
+        return allocate(vehicle);
+    }
+    
+    void release(ParkingSpot spot);
+    int getFreeCount(ParkingSpotType spotType);
+}
+
+// Free spots kept per spot type, so parking and unparking never scan the lot.
+// A vehicle tries the spot types it fits in enum order and takes the first free spot
+// of the first type with one, in the order spots were registered. That is the order
+// the old linear scan reached them, also after spots have been freed again.
+// Not thread-safe; see ConcurrentFreeSpotIndex.
+class FreeSpotIndex implements SpotAllocator {
+    private final Map<ParkingSpotType, FreeSpots> freeSpots = new EnumMap<>(ParkingSpotType.class);
+    private final Map<VehicleType, List<ParkingSpotType>> fittingTypes = new EnumMap<>(VehicleType.class);
+    
+    public FreeSpotIndex(Collection<ParkingSpot> spots) {
+        for (ParkingSpotType spotType : ParkingSpotType.values()) {
+            freeSpots.put(spotType, new FreeSpots());
+        }
+        for (VehicleType vehicleType : VehicleType.values()) {
+            fittingTypes.put(vehicleType, ParkingSpot.fittingTypes(vehicleType));
+        }
+        for (ParkingSpot spot : spots) {
+            addSpot(spot);
+        }
+    }
+    
+    // Register a spot after the ones already known; it is handed out only while free
+    public void addSpot(ParkingSpot spot) {
+        FreeSpots typeSpots = freeSpots.get(spot.getType());
+        int position = typeSpots.positionOf(spot);
+        if (spot.isFree()) {
+            typeSpots.markFree(position);
+        }
+    }
+    
+    // Take a free spot that fits the vehicle and assign it, or return null
+    @Override
+    public ParkingSpot allocate(Vehicle vehicle) {
+        for (ParkingSpotType spotType : fittingTypes.get(vehicle.getType())) {
+            ParkingSpot spot = freeSpots.get(spotType).takeFirst();
+            if (spot != null) {
+                spot.assignVehicle(vehicle);
+                return spot;
+            }
+        }
+        return null;
+    }
+    
+    // Free an occupied spot and make it available again
+    @Override
+    public void release(ParkingSpot spot) {
+        if (spot.isFree()) {
+            return;
+        }
+        spot.freeSpot();
+        FreeSpots typeSpots = freeSpots.get(spot.getType());
+        typeSpots.markFree(typeSpots.positionOf(spot));
+    }
+    
+    @Override
+    public int getFreeCount(ParkingSpotType spotType) {
+        return freeSpots.get(spotType).freeCount;
+    }
+    
+    // The spots of one type in registration order, with a bit set for each free one
+    private static final class FreeSpots {
+        private final List<ParkingSpot> spots = new ArrayList<>();
+        private final Map<ParkingSpot, Integer> positions = new HashMap<>();
+        private final BitSet free = new BitSet();
+        private int freeCount;
+        
+        int positionOf(ParkingSpot spot) {
+            Integer position = positions.get(spot);
+            if (position == null) {
+                position = spots.size();
+                spots.add(spot);
+                positions.put(spot, position);
+            }
+            return position;
+        }
+        
+        void markFree(int position) {
+            if (!free.get(position)) {
+                free.set(position);
+                freeCount++;
+            }
+        }
+        
+        ParkingSpot takeFirst() {
+            int position = free.nextSetBit(0);
+            if (position < 0) {
+                return null;
+            }
+            free.clear(position);
+            freeCount--;
+            return spots.get(position);
+        }
+    }
+}
+
+// Thread-safe allocator for lots served by many gates at once. Every (level, spot type)
+// pair is a stripe with a bitmap of free spots (one bit per spot); a gate claims a spot
+// by CAS-clearing its bit and releases it by CAS-setting it, so a spot can only be
+// claimed by one gate and gates working different levels or types never touch the same
+// words. Each claim starts at a random word so gates spread out over large stripes.
+// With an entrance, levels are tried nearest first (within a level any free spot is
+// taken); as elsewhere, the fitting spot types are tried in order before distance.
+class ConcurrentFreeSpotIndex implements SpotAllocator {
+    private final Map<Integer, Map<ParkingSpotType, Stripe>> stripesByLevel = new TreeMap<>();
+    private final List<Integer> levels;
+    // Level orders by distance from an entrance level, built on first use
+    private final Map<Integer, List<Integer>> levelsNearest = new ConcurrentHashMap<>();
+    private final Map<VehicleType, List<ParkingSpotType>> fittingTypes = new EnumMap<>(VehicleType.class);
+    
+    public ConcurrentFreeSpotIndex(Collection<ParkingSpot> spots) {
+        Map<Integer, Map<ParkingSpotType, List<ParkingSpot>>> spotsByLevel = new TreeMap<>();
+        for (ParkingSpot spot : spots) {
+            spotsByLevel.computeIfAbsent(spot.getLevel(), level -> {
+                Map<ParkingSpotType, List<ParkingSpot>> byType = new EnumMap<>(ParkingSpotType.class);
+                for (ParkingSpotType spotType : ParkingSpotType.values()) {
+                    byType.put(spotType, new ArrayList<>());
+                }
+                return byType;
+            }).get(spot.getType()).add(spot);
+        }
+        for (Map.Entry<Integer, Map<ParkingSpotType, List<ParkingSpot>>> level : spotsByLevel.entrySet()) {
+            Map<ParkingSpotType, Stripe> stripes = new EnumMap<>(ParkingSpotType.class);
+            for (ParkingSpotType spotType : ParkingSpotType.values()) {
+                stripes.put(spotType, new Stripe(level.getValue().get(spotType)));
+            }
+            stripesByLevel.put(level.getKey(), stripes);
+        }
+        this.levels = new ArrayList<>(stripesByLevel.keySet());
+        for (VehicleType vehicleType : VehicleType.values()) {
+            fittingTypes.put(vehicleType, ParkingSpot.fittingTypes(vehicleType));
+        }
+    }
+    
+    // Lowest level first
+    @Override
+    public ParkingSpot allocate(Vehicle vehicle) {
+        return claim(vehicle, levels);
+    }
+    
+    // Level nearest the entrance first
+    @Override
+    public ParkingSpot allocate(Vehicle vehicle, Entrance entrance) {
+        List<Integer> order = levelsNearest.computeIfAbsent(entrance.getLevel(), from -> {
+            List<Integer> sorted = new ArrayList<>(levels);
+            sorted.sort(Comparator.comparingInt((Integer level) -> Math.abs(level - from))
+                    .thenComparingInt(level -> level));
+            return sorted;
+        });
+        return claim(vehicle, order);
+    }
+    
+    // The caller must own the spot (e.g. have removed its ticket), so only one thread releases it
+    @Override
+    public void release(ParkingSpot spot) {
+        if (spot.isFree()) {
+            return;
+        }
+        spot.freeSpot();
+        stripesByLevel.get(spot.getLevel()).get(spot.getType()).free(spot);
+    }
+    
+    @Override
+    public int getFreeCount(ParkingSpotType spotType) {
+        int free = 0;
+        for (Map<ParkingSpotType, Stripe> stripes : stripesByLevel.values()) {
+            free += Math.max(0, stripes.get(spotType).freeCount.get());
+        }
+        return free;
+    }
+    
+    private ParkingSpot claim(Vehicle vehicle, List<Integer> levelOrder) {
+        for (ParkingSpotType spotType : fittingTypes.get(vehicle.getType())) {
+            for (int level : levelOrder) {
+                ParkingSpot spot = stripesByLevel.get(level).get(spotType).claim();
+                if (spot != null) {
+                    spot.assignVehicle(vehicle);
+                    return spot;
+                }
+            }
+        }
+        return null;
+    }
+    
+    private static final class Stripe {
+        private final ParkingSpot[] spots;
+        private final Map<ParkingSpot, Integer> positions = new HashMap<>();
+        private final AtomicLongArray freeBits;
+        // Lets full stripes be skipped without reading the bitmap
+        private final AtomicInteger freeCount = new AtomicInteger();
+        
+        Stripe(List<ParkingSpot> stripeSpots) {
+            this.spots = stripeSpots.toArray(new ParkingSpot[0]);
+            this.freeBits = new AtomicLongArray((spots.length + 63) / 64);
+            for (int i = 0; i < spots.length; i++) {
+                positions.put(spots[i], i);
+                if (spots[i].isFree()) {
+                    freeBits.set(i >>> 6, freeBits.get(i >>> 6) | (1L << i));
+                    freeCount.incrementAndGet();
+                }
+            }
+        }
+        
+        ParkingSpot claim() {
+            if (freeCount.get() <= 0) {
+                return null;
+            }
+            int words = freeBits.length();
+            int start = ThreadLocalRandom.current().nextInt(words);
+            for (int i = 0; i < words; i++) {
+                int word = (start + i) % words;
+                long bits;
+                while ((bits = freeBits.get(word)) != 0) {
+                    long lowest = bits & -bits;
+                    if (freeBits.compareAndSet(word, bits, bits & ~lowest)) {
+                        freeCount.decrementAndGet();
+                        return spots[(word << 6) + Long.numberOfTrailingZeros(lowest)];
+                    }
+                }
+            }
+            return null;
+        }
+        
+        void free(ParkingSpot spot) {
+            int position = positions.get(spot);
+            int word = position >>> 6;
+            long bit = 1L << position;
+            long bits;
+            do {
+                bits = freeBits.get(word);
+            } while (!freeBits.compareAndSet(word, bits, bits | bit));
+            freeCount.incrementAndGet();
+        }
+    }
+}
+
+// Allocates the free spot nearest to the vehicle's entrance. For every entrance, each
+// level keeps its free spots of each type in a TreeSet ordered by walking distance, so
+// the best spot is the nearest of the per-level heads: O(levels + log n) per allocation.
+// Taking or returning a spot updates the sets of every entrance, O(entrances * log n).
+// As with FreeSpotIndex, the fitting spot types are tried in order and distance only
+// decides within a type, so cars still fill compact spots before handicapped ones.
+// Not thread-safe.
+class NearestSpotIndex implements SpotAllocator {
+    private final List<Entrance> entrances;
+    private final Map<Entrance, Map<ParkingSpotType, Map<Integer, TreeSet<ParkingSpot>>>> freeSpots = new HashMap<>();
+    private final Map<ParkingSpotType, Integer> freeCounts = new EnumMap<>(ParkingSpotType.class);
+    private final Map<VehicleType, List<ParkingSpotType>> fittingTypes = new EnumMap<>(VehicleType.class);
+    
+    public NearestSpotIndex(Collection<ParkingSpot> spots, List<Entrance> entrances) {
+        if (entrances.isEmpty()) {
+            throw new IllegalArgumentException("At least one entrance is required");
+        }
+        this.entrances = new ArrayList<>(entrances);
+        for (Entrance entrance : entrances) {
+            Map<ParkingSpotType, Map<Integer, TreeSet<ParkingSpot>>> byType = new EnumMap<>(ParkingSpotType.class);
+            for (ParkingSpotType spotType : ParkingSpotType.values()) {
+                byType.put(spotType, new HashMap<>());
+            }
+            freeSpots.put(entrance, byType);
+        }
+        for (ParkingSpotType spotType : ParkingSpotType.values()) {
+            freeCounts.put(spotType, 0);
+        }
+        for (VehicleType vehicleType : VehicleType.values()) {
+            fittingTypes.put(vehicleType, ParkingSpot.fittingTypes(vehicleType));
+        }
+        for (ParkingSpot spot : spots) {
+            if (spot.isFree()) {
+                addFree(spot);
+            }
+        }
+    }
+    
+    // Nearest spot to the first entrance
+    @Override
+    public ParkingSpot allocate(Vehicle vehicle) {
+        return allocate(vehicle, entrances.get(0));
+    }
+    
+    @Override
+    public ParkingSpot allocate(Vehicle vehicle, Entrance entrance) {
+        Map<ParkingSpotType, Map<Integer, TreeSet<ParkingSpot>>> byType = freeSpots.get(entrance);
+        if (byType == null) {
+            throw new IllegalArgumentException("Unknown entrance: " + entrance);
+        }
+        for (ParkingSpotType spotType : fittingTypes.get(vehicle.getType())) {
+            ParkingSpot best = null;
+            for (TreeSet<ParkingSpot> level : byType.get(spotType).values()) {
+                if (!level.isEmpty() && (best == null || closer(entrance, level.first(), best))) {
+                    best = level.first();
+                }
+            }
+            if (best != null) {
+                removeFree(best);
+                best.assignVehicle(vehicle);
+                return best;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public void release(ParkingSpot spot) {
+        if (spot.isFree()) {
+            return;
+        }
+        spot.freeSpot();
+        addFree(spot);
+    }
+    
+    @Override
+    public int getFreeCount(ParkingSpotType spotType) {
+        return freeCounts.get(spotType);
+    }
+    
+    private void addFree(ParkingSpot spot) {
+        for (Entrance entrance : entrances) {
+            freeSpots.get(entrance).get(spot.getType())
+                    .computeIfAbsent(spot.getLevel(), level -> new TreeSet<>(byDistanceFrom(entrance)))
+                    .add(spot);
+        }
+        freeCounts.merge(spot.getType(), 1, Integer::sum);
+    }
+    
+    private void removeFree(ParkingSpot spot) {
+        for (Entrance entrance : entrances) {
+            freeSpots.get(entrance).get(spot.getType()).get(spot.getLevel()).remove(spot);
+        }
+        freeCounts.merge(spot.getType(), -1, Integer::sum);
+    }
+    
+    private static boolean closer(Entrance entrance, ParkingSpot a, ParkingSpot b) {
+        int distanceA = entrance.walkingDistance(a);
+        int distanceB = entrance.walkingDistance(b);
+        return distanceA < distanceB || (distanceA == distanceB && a.getSpotNumber() < b.getSpotNumber());
+    }
+    
+    private static Comparator<ParkingSpot> byDistanceFrom(Entrance entrance) {
+        return Comparator.comparingInt((ParkingSpot spot) -> entrance.walkingDistance(spot))
+                .thenComparingInt(ParkingSpot::getSpotNumber);
+    }
+}
+
 // Parking Ticket
 class ParkingTicket {
+    // Shared by every lot, so ticket numbers never collide within a lot or across a group
+    private static final AtomicLong NEXT_TICKET_NUMBER = new AtomicLong();
+    
     private String ticketNumber;
     private LocalDateTime issuedAt;
     private LocalDateTime paidAt;
@@ -148,7 +710,7 @@ class ParkingTicket {
     private ParkingSpot parkingSpot;
     
     public ParkingTicket(Vehicle vehicle, ParkingSpot spot) {
-        this.ticketNumber = UUID.randomUUID().toString().substring(0, 8);
+        this.ticketNumber = String.format("%08d", NEXT_TICKET_NUMBER.incrementAndGet());
         this.issuedAt = LocalDateTime.now();
         this.status = ParkingTicketStatus.ACTIVE;
         this.vehicle = vehicle;
@@ -184,23 +746,176 @@ class ParkingRate {
     }
 }
 
+// One change in the number of free spots of a type on a level
+class AvailabilityDelta {
+    private String lotName;
+    private int level;
+    private ParkingSpotType spotType;
+    private int change;
+    private int freeOnLevel;
+    
+    public AvailabilityDelta(String lotName, int level, ParkingSpotType spotType, int change, int freeOnLevel) {
+        this.lotName = lotName;
+        this.level = level;
+        this.spotType = spotType;
+        this.change = change;
+        this.freeOnLevel = freeOnLevel;
+    }
+    
+    public String getLotName() { return lotName; }
+    public int getLevel() { return level; }
+    public ParkingSpotType getSpotType() { return spotType; }
+    public int getChange() { return change; } // -1 when a spot is taken, +1 when freed
+    public int getFreeOnLevel() { return freeOnLevel; } // free count right after this change
+    
+    @Override
+    public String toString() {
+        return lotName + " level " + level + " " + spotType + " " + (change > 0 ? "+" : "") + change
+                + " (" + freeOnLevel + " free)";
+    }
+}
+
+// Receives availability changes as they happen
+@FunctionalInterface
+interface AvailabilityListener {
+    void onAvailabilityChanged(AvailabilityDelta delta);
+}
+
+// Free-spot counters per level and type, updated on every park and unpark so display
+// boards never scan the lot. Counts are atomics read without locking; lot-wide totals
+// per type add up the levels. Every change is pushed to subscribers.
+// Listeners run on the gate's thread and must be quick; a board that renders slowly
+// should hand deltas to its own queue. With concurrent gates, deltas can arrive out of
+// order, so boards should add up getChange() rather than show getFreeOnLevel() as is.
+class AvailabilityCounters {
+    private final String lotName;
+    private final Map<Integer, Map<ParkingSpotType, AtomicInteger>> freeByLevel = new TreeMap<>();
+    private final List<AvailabilityListener> listeners = new CopyOnWriteArrayList<>();
+    
+    public AvailabilityCounters(String lotName, Collection<ParkingSpot> spots) {
+        this.lotName = lotName;
+        for (ParkingSpot spot : spots) {
+            Map<ParkingSpotType, AtomicInteger> level = freeByLevel.computeIfAbsent(spot.getLevel(), number -> {
+                Map<ParkingSpotType, AtomicInteger> counters = new EnumMap<>(ParkingSpotType.class);
+                for (ParkingSpotType spotType : ParkingSpotType.values()) {
+                    counters.put(spotType, new AtomicInteger());
+                }
+                return counters;
+            });
+            if (spot.isFree()) {
+                level.get(spot.getType()).incrementAndGet();
+            }
+        }
+    }
+    
+    public void spotTaken(ParkingSpot spot) {
+        update(spot, -1);
+    }
+    
+    public void spotFreed(ParkingSpot spot) {
+        update(spot, 1);
+    }
+    
+    public int getFreeCount(ParkingSpotType spotType) {
+        int free = 0;
+        for (Map<ParkingSpotType, AtomicInteger> counters : freeByLevel.values()) {
+            free += counters.get(spotType).get();
+        }
+        return free;
+    }
+    
+    public int getFreeCount(int level, ParkingSpotType spotType) {
+        Map<ParkingSpotType, AtomicInteger> counters = freeByLevel.get(level);
+        return counters == null ? 0 : counters.get(spotType).get();
+    }
+    
+    public Set<Integer> getLevels() {
+        return Collections.unmodifiableSet(freeByLevel.keySet());
+    }
+    
+    public void subscribe(AvailabilityListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+    
+    public void unsubscribe(AvailabilityListener listener) {
+        listeners.remove(listener);
+    }
+    
+    private void update(ParkingSpot spot, int change) {
+        int freeOnLevel = freeByLevel.get(spot.getLevel()).get(spot.getType()).addAndGet(change);
+        if (listeners.isEmpty()) {
+            return;
+        }
+        AvailabilityDelta delta = new AvailabilityDelta(lotName, spot.getLevel(), spot.getType(), change, freeOnLevel);
+        for (AvailabilityListener listener : listeners) {
+            try {
+                listener.onAvailabilityChanged(delta);
+            } catch (RuntimeException e) {
+                // A broken board must not fail parking
+                System.err.println("Availability listener failed: " + e);
+            }
+        }
+    }
+}
+
 // Main Parking Lot System
 class ParkingLot {
     private String name;
     private String address;
     private List<ParkingSpot> parkingSpots;
+    private List<ParkingLevel> levels;
+    private List<Entrance> entrances;
+    private SpotAllocator spotAllocator;
+    private AvailabilityCounters availability;
     private Map<String, ParkingTicket> activeTickets;
     private ParkingRate parkingRate;
+    private volatile boolean verbose = true;
     
     public ParkingLot(String name, String address) {
+        this(name, address, false);
+    }
+    
+    // Concurrent mode lets any number of gates park and unpark at the same time
+    public ParkingLot(String name, String address, boolean concurrent) {
         this.name = name;
         this.address = address;
         this.parkingSpots = new ArrayList<>();
-        this.activeTickets = new HashMap<>();
+        this.levels = new ArrayList<>();
+        this.entrances = new ArrayList<>();
+        this.activeTickets = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
         this.parkingRate = new ParkingRate();
         
         // Initialize parking spots
         initializeParkingSpots();
+        this.spotAllocator = concurrent
+                ? new ConcurrentFreeSpotIndex(parkingSpots) : new FreeSpotIndex(parkingSpots);
+        this.availability = new AvailabilityCounters(name, parkingSpots);
+    }
+    
+    // Multi-level lot that gives each vehicle the free spot nearest its entrance. In
+    // concurrent mode spots come from the lock-free index, which picks the nearest level
+    // with a free spot but not the nearest spot within it.
+    public ParkingLot(String name, String address, List<ParkingLevel> levels, List<Entrance> entrances,
+                      boolean concurrent) {
+        this.name = name;
+        this.address = address;
+        this.parkingSpots = new ArrayList<>();
+        this.levels = new ArrayList<>(levels);
+        this.entrances = new ArrayList<>(entrances);
+        this.activeTickets = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        this.parkingRate = new ParkingRate();
+        
+        for (ParkingLevel level : levels) {
+            parkingSpots.addAll(level.getSpots());
+        }
+        this.spotAllocator = concurrent
+                ? new ConcurrentFreeSpotIndex(parkingSpots) : new NearestSpotIndex(parkingSpots, entrances);
+        this.availability = new AvailabilityCounters(name, parkingSpots);
+    }
+    
+    // Turn per-vehicle messages on or off
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
     }
     
     private void initializeParkingSpots() {
@@ -217,33 +932,42 @@ class ParkingLot {
     }
     
     public ParkingTicket parkVehicle(Vehicle vehicle) {
-        ParkingSpot spot = findAvailableSpot(vehicle);
+        return issueTicket(vehicle, spotAllocator.allocate(vehicle));
+    }
+    
+    // Park in the free spot nearest the entrance the vehicle came through
+    public ParkingTicket parkVehicle(Vehicle vehicle, Entrance entrance) {
+        if (!entrances.contains(entrance)) {
+            throw new IllegalArgumentException("Entrance " + entrance + " does not belong to " + name);
+        }
+        return issueTicket(vehicle, spotAllocator.allocate(vehicle, entrance));
+    }
+    
+    private ParkingTicket issueTicket(Vehicle vehicle, ParkingSpot spot) {
         if (spot == null) {
-            System.out.println("No available spot for vehicle: " + vehicle.getLicensePlate());
+            if (verbose) {
+                System.out.println("No available spot for vehicle: " + vehicle.getLicensePlate());
+            }
             return null;
         }
         
-        spot.assignVehicle(vehicle);
+        availability.spotTaken(spot);
         ParkingTicket ticket = new ParkingTicket(vehicle, spot);
         activeTickets.put(ticket.getTicketNumber(), ticket);
         
-        System.out.println("Vehicle parked successfully. Ticket: " + ticket.getTicketNumber());
-        return ticket;
-    }
-    
-    private ParkingSpot findAvailableSpot(Vehicle vehicle) {
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.canFitVehicle(vehicle)) {
-                return spot;
-            }
+        if (verbose) {
+            System.out.println("Vehicle parked successfully. Ticket: " + ticket.getTicketNumber());
         }
-        return null;
+        return ticket;
     }
     
     public double unparkVehicle(String ticketNumber) {
-        ParkingTicket ticket = activeTickets.get(ticketNumber);
+        // Removing the ticket first means only one gate can process it
+        ParkingTicket ticket = activeTickets.remove(ticketNumber);
         if (ticket == null || ticket.getStatus() != ParkingTicketStatus.ACTIVE) {
-            System.out.println("Invalid ticket number or ticket already processed");
+            if (verbose) {
+                System.out.println("Invalid ticket number or ticket already processed");
+            }
             return 0;
         }
         
@@ -252,24 +976,110 @@ class ParkingLot {
         
         ticket.setAmount(amount);
         ticket.setStatus(ParkingTicketStatus.PAID);
-        ticket.getParkingSpot().freeSpot();
-        activeTickets.remove(ticketNumber);
+        spotAllocator.release(ticket.getParkingSpot());
+        availability.spotFreed(ticket.getParkingSpot());
         
-        System.out.println("Vehicle unparked. Amount: $" + amount);
+        if (verbose) {
+            System.out.println("Vehicle unparked. Amount: $" + amount);
+        }
         return amount;
     }
     
     public void displayAvailability() {
-        Map<ParkingSpotType, Integer> availability = new HashMap<>();
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.isFree()) {
-                availability.put(spot.getType(), availability.getOrDefault(spot.getType(), 0) + 1);
+        System.out.println("Available spots:");
+        for (ParkingSpotType spotType : ParkingSpotType.values()) {
+            int free = availability.getFreeCount(spotType);
+            if (free > 0) {
+                System.out.println(spotType + ": " + free);
             }
         }
-        
-        System.out.println("Available spots:");
-        for (Map.Entry<ParkingSpotType, Integer> entry : availability.entrySet()) {
-            System.out.println(entry.getKey() + ": " + entry.getValue());
+    }
+    
+    public void displayLevelAvailability() {
+        System.out.println("Available spots by level:");
+        for (int level : availability.getLevels()) {
+            StringBuilder line = new StringBuilder("Level " + level + ":");
+            for (ParkingSpotType spotType : ParkingSpotType.values()) {
+                line.append(" ").append(spotType).append("=").append(availability.getFreeCount(level, spotType));
+            }
+            System.out.println(line);
+        }
+    }
+    
+    // Lock-free reads of the live counters
+    public int getFreeCount(ParkingSpotType spotType) {
+        return availability.getFreeCount(spotType);
+    }
+    
+    public int getFreeCount(int level, ParkingSpotType spotType) {
+        return availability.getFreeCount(level, spotType);
+    }
+    
+    // Push availability changes to a display board instead of polling
+    public void subscribe(AvailabilityListener listener) {
+        availability.subscribe(listener);
+    }
+    
+    public void unsubscribe(AvailabilityListener listener) {
+        availability.unsubscribe(listener);
+    }
+    
+    // Fraction of spots taken
+    public double getOccupancy() {
+        return parkingSpots.isEmpty() ? 1.0 : (double) activeTickets.size() / parkingSpots.size();
+    }
+    
+    public String getName() { return name; }
+    public List<ParkingLevel> getLevels() { return levels; }
+    public List<Entrance> getEntrances() { return entrances; }
+    public int getCapacity() { return parkingSpots.size(); }
+}
+
+// Facade over several lots that sends each vehicle to the least-loaded lot with room
+// for it, and routes tickets back to the lot that issued them.
+class ParkingLotGroup {
+    private String name;
+    private List<ParkingLot> lots;
+    private Map<String, ParkingLot> lotByTicket;
+    
+    public ParkingLotGroup(String name) {
+        this.name = name;
+        this.lots = new CopyOnWriteArrayList<>();
+        this.lotByTicket = new ConcurrentHashMap<>();
+    }
+    
+    public void addLot(ParkingLot lot) {
+        lots.add(lot);
+    }
+    
+    // Lots are tried from least to most occupied, so a full lot of one spot type falls through
+    public ParkingTicket parkVehicle(Vehicle vehicle) {
+        List<ParkingLot> byLoad = new ArrayList<>(lots);
+        byLoad.sort(Comparator.comparingDouble(ParkingLot::getOccupancy));
+        for (ParkingLot lot : byLoad) {
+            ParkingTicket ticket = lot.parkVehicle(vehicle);
+            if (ticket != null) {
+                lotByTicket.put(ticket.getTicketNumber(), lot);
+                return ticket;
+            }
+        }
+        System.out.println("No lot in " + name + " has room for vehicle: " + vehicle.getLicensePlate());
+        return null;
+    }
+    
+    public double unparkVehicle(String ticketNumber) {
+        ParkingLot lot = lotByTicket.remove(ticketNumber);
+        if (lot == null) {
+            System.out.println("Invalid ticket number or ticket already processed");
+            return 0;
+        }
+        return lot.unparkVehicle(ticketNumber);
+    }
+    
+    public void displayOccupancy() {
+        System.out.println(name + " occupancy:");
+        for (ParkingLot lot : lots) {
+            System.out.printf("%s: %.0f%%%n", lot.getName(), lot.getOccupancy() * 100);
         }
     }
 }
\ No newline at end of file